@@ -3,6 +3,8 @@ package com.vb.fitnessapp.controller;
 import com.vb.fitnessapp.dto.UserDTO;
 import com.vb.fitnessapp.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 
 import javax.servlet.http.HttpServletRequest;
 import java.text.DateFormat;
@@ -10,6 +12,9 @@ import java.text.SimpleDateFormat;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 public abstract class AbstractController {
 
@@ -18,15 +23,41 @@ public abstract class AbstractController {
 
     final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
 
+    /** How long a client turned away by UserService's password hashing pool should wait before trying again. */
+    static final String PASSWORD_RETRY_AFTER_SECONDS = "5";
+
     @Autowired
     UserService userService;
 
+    /** The request attribute under which "currentAuthenticatedUser()" keeps the user it found, for the rest of the request. */
+    private static final String CURRENT_USER_ATTRIBUTE = AbstractController.class.getName() + ".currentUser";
+
     /**
-     * Used by child class controllers to obtain the currently authenticated user from Spring Security.
+     * Used by child class controllers to obtain the currently authenticated user from Spring Security.  The user is
+     * looked up once per request (and cached across requests by UserService), so calling this more than once is cheap.
      */
 
     final UserDTO currentAuthenticatedUser(final HttpServletRequest request) {
-        return userService.findByEmail((String) request.getAttribute("email"));
+        UserDTO userDTO = (UserDTO) request.getAttribute(CURRENT_USER_ATTRIBUTE);
+        if (userDTO == null) {
+            userDTO = userService.findByEmail((String) request.getAttribute("email"));
+            request.setAttribute(CURRENT_USER_ATTRIBUTE, userDTO);
+        }
+        return userDTO;
+    }
+
+    /**
+     * Used by child class controllers that need only the current user's id.  It's read from the login token's claims
+     * (see AuthController.issueToken()) when the token has them, since a user's id never changes, so there's no lookup.
+     */
+
+    final UUID currentUserId(final HttpServletRequest request) {
+        final Object userId = request.getAttribute("userId");
+        if (userId != null) {
+            return UUID.fromString((String) userId);
+        }
+        final UserDTO userDTO = currentAuthenticatedUser(request);
+        return userDTO == null ? null : userDTO.getId();
     }
 
     final java.sql.Date stringToSqlDate(final String dateString) {
@@ -40,14 +71,50 @@ public abstract class AbstractController {
         return date;
     }
 
+    /**
+     * Today's date in the current user's time zone.  The time zone is read from the login token's claims, unless the
+     * profile has changed since the token was issued, in which case it's read from the user's profile.
+     */
+
+    final java.sql.Date todaySqlDateForUser(final HttpServletRequest request) {
+        final Object timeZone = request.getAttribute("timeZone");
+        final Object profileVersion = request.getAttribute("profileVersion");
+        if (timeZone != null && profileVersion instanceof Number
+                && userService.isProfileVersionCurrent(currentUserId(request), ((Number) profileVersion).intValue())) {
+            return todaySqlDate(ZoneId.of((String) timeZone));
+        }
+        return todaySqlDateForUser(currentAuthenticatedUser(request));
+    }
+
     final java.sql.Date todaySqlDateForUser(final UserDTO user) {
         if (user == null) {
             return new java.sql.Date(new Date().getTime());
         } else {
-            final ZoneId timeZone = ZoneId.of(user.getTimeZone());
-            final ZonedDateTime zonedDateTime = ZonedDateTime.now(timeZone);
-            return new java.sql.Date(zonedDateTime.toLocalDate().atStartOfDay(timeZone).toInstant().toEpochMilli());
+            return todaySqlDate(ZoneId.of(user.getTimeZone()));
+        }
+    }
+
+    private java.sql.Date todaySqlDate(final ZoneId timeZone) {
+        final ZonedDateTime zonedDateTime = ZonedDateTime.now(timeZone);
+        return new java.sql.Date(zonedDateTime.toLocalDate().atStartOfDay(timeZone).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Maps the failure of an async password job (see UserService.verifyPasswordAsync()) to a "503 Service Unavailable"
+     * with a "Retry-After" header, when it failed because the password hashing pool turned it away.  Any other failure
+     * is rethrown.
+     */
+    static <T> ResponseEntity<T> passwordPoolRejection(
+            final Throwable throwable,
+            final T body
+    ) {
+        final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        if (!(cause instanceof RejectedExecutionException)) {
+            throw new CompletionException(cause);
         }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", PASSWORD_RETRY_AFTER_SECONDS)
+                .body(body);
     }
 
 }
@@ -1,63 +1,165 @@
 package com.vb.fitnessapp.controller;
 
+import com.vb.fitnessapp.config.JwtTokens;
+import com.vb.fitnessapp.config.TokenRefresher;
+import com.vb.fitnessapp.config.TokenRefresher.RefreshedTokens;
 import com.vb.fitnessapp.dto.UserDTO;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import com.vb.fitnessapp.service.TokenRevocationService;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController extends AbstractController {
 
+    private final TokenRevocationService tokenRevocationService;
+    private final TokenRefresher tokenRefresher;
+
+    @Autowired
+    public AuthController(
+            final TokenRevocationService tokenRevocationService,
+            final TokenRefresher tokenRefresher
+    ) {
+        this.tokenRevocationService = tokenRevocationService;
+        this.tokenRefresher = tokenRefresher;
+    }
+
+    /**
+     * The password check runs on UserService's password hashing pool, and the response is completed asynchronously
+     * once it's done, so that a burst of logins doesn't tie up the request threads.  When that pool (or the account's
+     * share of it) is full, the login is turned away with a 503 and a "Retry-After" header.
+     */
     @PostMapping("/userpass")
-    public LoginResponse doLogin(
-            @RequestBody final Map<String, Object> payload,
-            final HttpServletResponse response
-    ) throws ServletException, IOException {
+    public CompletableFuture<ResponseEntity<LoginResponse>> doLogin(@RequestBody final Map<String, Object> payload) {
         // Validate inputs
         final LoginResponse loginResponse = new LoginResponse();
         if (payload.get("username") == null || !(payload.get("username") instanceof String)
                 || payload.get("password") == null || !(payload.get("password") instanceof String)) {
             loginResponse.setError("Username and password are required");
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            return loginResponse;
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(loginResponse));
         }
 
         // Check credentials
         final String username = (String) payload.get("username");
         final String password = (String) payload.get("password");
         final UserDTO userDTO = userService.findByEmail(username);
-        if (userDTO == null || !userService.verifyPassword(userDTO, password)) {
+        if (userDTO == null) {
             loginResponse.setError("The username and password do not match");
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            return loginResponse;
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(loginResponse));
         }
+        final int profileVersion = userService.findProfileVersion(userDTO.getId());
+        return userService.verifyPasswordAsync(userDTO, password).handle((verified, throwable) -> {
+            if (throwable != null) {
+                loginResponse.setError("Too many login attempts, please try again shortly");
+                return passwordPoolRejection(throwable, loginResponse);
+            } else if (!verified) {
+                loginResponse.setError("The username and password do not match");
+                return ResponseEntity.badRequest().body(loginResponse);
+            }
+
+            // Authentication success, return JWT... along with a refresh token, for renewing it once it expires.  It's
+            // returned as a cookie for browsers, and in the body for scripts which renew it through "/refresh".
+            final String refreshToken = issueRefreshToken(userDTO, profileVersion);
+            loginResponse.setToken(issueToken(userDTO, profileVersion));
+            loginResponse.setRefreshToken(refreshToken);
+            return ResponseEntity.ok()
+                    .header("Set-Cookie", JwtTokens.refreshTokenCookie(refreshToken))
+                    .body(loginResponse);
+        });
+    }
 
-        // Authentication success, return JWT
-        // TODO: Make the secret key value dynamic... pulled from environment variable or properties file or whatever
-        final String token = Jwts.builder()
-                .setSubject(username)
-                .claim("email", username)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(new Date().getTime() + TimeUnit.DAYS.toMillis(1)))
-                .signWith(SignatureAlgorithm.HS256, "secretkey")
-                .compact();
-        loginResponse.setToken(token);
-        return loginResponse;
+    /**
+     * Issues a new access token from a refresh token, for clients which send the access token as an "Authorization"
+     * header rather than a cookie, and so can't rely on JwtFilter renewing the cookie.  The refresh token is taken from
+     * the "refreshToken" field of the body, or else the "Refresh" cookie.  Once it's past half its lifetime it's replaced
+     * (see TokenRefresher), and the replacement is returned in its place.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<LoginResponse> doRefresh(
+            @RequestBody(required = false) final Map<String, Object> payload,
+            final HttpServletRequest request
+    ) {
+        final LoginResponse loginResponse = new LoginResponse();
+        final boolean fromCookie = payload == null || !(payload.get("refreshToken") instanceof String);
+        final String refreshToken = fromCookie
+                ? JwtTokens.cookieValue(request, JwtTokens.REFRESH_TOKEN_COOKIE)
+                : (String) payload.get("refreshToken");
+        final RefreshedTokens refreshedTokens = tokenRefresher.refresh(refreshToken);
+        if (refreshedTokens == null) {
+            loginResponse.setError("Invalid or expired refresh token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(loginResponse);
+        }
+
+        loginResponse.setToken(refreshedTokens.getAccessToken());
+        if (refreshedTokens.getRefreshToken() == null) {
+            loginResponse.setRefreshToken(refreshToken);
+            return ResponseEntity.ok(loginResponse);
+        }
+        loginResponse.setRefreshToken(refreshedTokens.getRefreshToken());
+        final ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok();
+        if (fromCookie) {
+            responseBuilder.header("Set-Cookie", JwtTokens.refreshTokenCookie(refreshedTokens.getRefreshToken()));
+        }
+        return responseBuilder.body(loginResponse);
+    }
+
+    /**
+     * Revokes the caller's access and refresh tokens (see TokenRevocationService), so that copies of them can't be used
+     * either, then deletes their cookies and sends the caller back to the login page.
+     */
+    @PostMapping("/logout")
+    public void doLogout(
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) throws IOException {
+        final Claims accessClaims = JwtTokens.parseAccessToken(JwtTokens.cookieValue(request, JwtTokens.ACCESS_TOKEN_COOKIE));
+        final Claims refreshClaims = JwtTokens.parseRefreshToken(JwtTokens.cookieValue(request, JwtTokens.REFRESH_TOKEN_COOKIE));
+        for (final Claims claims : Arrays.asList(accessClaims, refreshClaims)) {
+            if (claims != null && claims.getId() != null) {
+                tokenRevocationService.revokeToken(claims.getId(), claims.getExpiration());
+            }
+        }
+        response.addHeader("Set-Cookie", JwtTokens.expiredCookie(JwtTokens.ACCESS_TOKEN_COOKIE));
+        response.addHeader("Set-Cookie", JwtTokens.expiredCookie(JwtTokens.REFRESH_TOKEN_COOKIE));
+        response.sendRedirect("/login.html?logout=true");
+    }
+
+    /**
+     * Issues an access token for the user (see JwtTokens).  Besides the email, it carries the user id, time zone and
+     * profile version as claims, so that controllers needing only those can skip looking up the user.  The time zone is
+     * trusted only while "profileVersion" is current, and ProfileController issues fresh tokens after a profile change.
+     */
+    static String issueToken(
+            final UserDTO userDTO,
+            final int profileVersion
+    ) {
+        return JwtTokens.issueAccessToken(userDTO.getEmail(), userDTO.getId(), userDTO.getTimeZone(), profileVersion);
+    }
+
+    /** Issues a refresh token for the user, with the same claims as "issueToken()" (see JwtTokens). */
+    static String issueRefreshToken(
+            final UserDTO userDTO,
+            final int profileVersion
+    ) {
+        return JwtTokens.issueRefreshToken(userDTO.getEmail(), userDTO.getId(), userDTO.getTimeZone(), profileVersion);
     }
 
     private static class LoginResponse {
         private String token;
+        private String refreshToken;
         private String error;
         public String getToken() {
             return token;
@@ -65,6 +167,12 @@ public class AuthController extends AbstractController {
         public void setToken(final String token) {
             this.token = token;
         }
+        public String getRefreshToken() {
+            return refreshToken;
+        }
+        public void setRefreshToken(final String refreshToken) {
+            this.refreshToken = refreshToken;
+        }
         public String getError() {
             return error;
         }
@@ -0,0 +1,84 @@
+package com.vb.fitnessapp.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free Bloom filter of strings, for the hot-path check in TokenRevocationService.  "mightContain()" never gives
+ * a false negative, and gives a false positive at roughly the rate it was sized for, as long as no more than the
+ * expected number of keys have been added.  Keys can't be removed... the filter is rebuilt instead.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final int bitCount;
+    private final int hashCount;
+
+    BloomFilter(final int expectedInsertions, final double falsePositiveRate) {
+        final int insertions = Math.max(1, expectedInsertions);
+        final double ln2 = Math.log(2);
+        this.bitCount = (int) Math.max(64, Math.ceil(-insertions * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / insertions * ln2));
+        this.words = new AtomicLongArray((bitCount + 63) / 64);
+    }
+
+
+    void put(final String key) {
+        final long hash = hash64(key);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        for (int index = 1; index <= hashCount; index++) {
+            final int bit = bitIndex(hash1, hash2, index);
+            final long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(bit >>> 6);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(bit >>> 6, word, word | mask));
+        }
+    }
+
+    boolean mightContain(final String key) {
+        final long hash = hash64(key);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        for (int index = 1; index <= hashCount; index++) {
+            final int bit = bitIndex(hash1, hash2, index);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /** The "index"th bit for a key, by double hashing (see Kirsch and Mitzenmacher, "Less Hashing, Same Performance"). */
+    private int bitIndex(
+            final int hash1,
+            final int hash2,
+            final int index
+    ) {
+        int combined = hash1 + index * hash2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % bitCount;
+    }
+
+    /** 64-bit FNV-1a over the key's chars, followed by the MurmurHash3 finalizer to spread the bits. */
+    private static long hash64(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int index = 0; index < key.length(); index++) {
+            hash ^= key.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
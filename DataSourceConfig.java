@@ -0,0 +1,34 @@
+package com.vb.fitnessapp.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Wraps the auto-configured DataSource in a StatementCountingDataSource, before anything else is handed it.  The
+     * method is static because BeanPostProcessor's must be created ahead of the rest of the configuration.
+     */
+    @Bean
+
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(final Object bean, final String beanName) {
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+                return bean instanceof DataSource && !(bean instanceof StatementCountingDataSource)
+                        ? new StatementCountingDataSource((DataSource) bean)
+                        : bean;
+            }
+        };
+    }
+
+}
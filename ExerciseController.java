@@ -2,7 +2,6 @@ package com.vb.fitnessapp.controller;
 
 import com.vb.fitnessapp.dto.ExerciseDTO;
 import com.vb.fitnessapp.dto.ExercisePerformedDTO;
-import com.vb.fitnessapp.dto.UserDTO;
 import com.vb.fitnessapp.service.ExerciseService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -41,9 +40,9 @@ final class ExerciseController extends AbstractController {
             @PathVariable(name = "date") final String dateString,
             final HttpServletRequest request
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        final Date date = dateString == null ? todaySqlDateForUser(userDTO) : stringToSqlDate(dateString);
-        return exerciseService.findPerformedOnDate(userDTO.getId(), date);
+        final UUID userId = currentUserId(request);
+        final Date date = dateString == null ? todaySqlDateForUser(request) : stringToSqlDate(dateString);
+        return exerciseService.findPerformedOnDate(userId, date);
     }
 
 
@@ -58,10 +57,10 @@ final class ExerciseController extends AbstractController {
             final HttpServletRequest request,
             final Model model
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        final Date date = dateString == null ? todaySqlDateForUser(userDTO) : stringToSqlDate(dateString);
+        final UUID userId = currentUserId(request);
+        final Date date = dateString == null ? todaySqlDateForUser(request) : stringToSqlDate(dateString);
 
-        final List<ExerciseDTO> exercisesPerformedRecently = exerciseService.findPerformedRecently(userDTO.getId(), date)
+        final List<ExerciseDTO> exercisesPerformedRecently = exerciseService.findPerformedRecently(userId, date)
                 .stream()
                 .map(truncateExerciseDescriptionFunction)
                 .collect(toList());
@@ -73,7 +72,7 @@ final class ExerciseController extends AbstractController {
                 .map(truncateExerciseDescriptionFunction)
                 .collect(toList());
 
-        final List<ExercisePerformedDTO> exercisePerformedThisDate = exerciseService.findPerformedOnDate(userDTO.getId(), date);
+        final List<ExercisePerformedDTO> exercisePerformedThisDate = exerciseService.findPerformedOnDate(userId, date);
         int totalMinutes = 0;
         int totalCaloriesBurned = 0;
         for (final ExercisePerformedDTO exercisePerformed : exercisePerformedThisDate) {
@@ -98,10 +97,10 @@ final class ExerciseController extends AbstractController {
             final HttpServletRequest request,
             final Model model
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        final Date date = dateString == null ? todaySqlDateForUser(userDTO) : stringToSqlDate(dateString);
+        final UUID userId = currentUserId(request);
+        final Date date = dateString == null ? todaySqlDateForUser(request) : stringToSqlDate(dateString);
         final UUID exerciseId = UUID.fromString(exerciseIdString);
-        exerciseService.addExercisePerformed(userDTO.getId(), exerciseId, date);
+        exerciseService.addExercisePerformed(userId, exerciseId, date);
         return viewMainExercisePage(dateString, request, model);
     }
 
@@ -113,11 +112,11 @@ final class ExerciseController extends AbstractController {
             final HttpServletRequest request,
             final Model model
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
+        final UUID userId = currentUserId(request);
         final UUID exercisePerformedUUID = UUID.fromString(exercisePerformedId);
         final ExercisePerformedDTO exercisePerformedDTO = exerciseService.findExercisePerformedById(exercisePerformedUUID);
         final String dateString = dateFormat.format(exercisePerformedDTO.getDate());
-        if (!userDTO.getId().equals(exercisePerformedDTO.getUserId())) {
+        if (!userId.equals(exercisePerformedDTO.getUserId())) {
             System.out.println("\n\nThis user is unable to update this exercise performed\n");
         } else if (action.equalsIgnoreCase("update")) {
             exerciseService.updateExercisePerformed(exercisePerformedUUID, minutes);
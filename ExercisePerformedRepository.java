@@ -0,0 +1,59 @@
+package com.vb.fitnessapp.repository;
+
+import com.vb.fitnessapp.domain.Exercise;
+import com.vb.fitnessapp.domain.ExercisePerformed;
+import com.vb.fitnessapp.domain.User;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.UUID;
+
+public interface ExercisePerformedRepository extends CrudRepository<ExercisePerformed, UUID> {
+
+    @Query(
+            "SELECT exercisePerformed FROM ExercisePerformed exercisePerformed, Exercise exercise "
+                + "WHERE exercisePerformed.exercise = exercise "
+                + "AND exercisePerformed.user = :user "
+                + "AND exercisePerformed.date = :date "
+                + "ORDER BY exercise.description ASC"
+    )
+
+    List<ExercisePerformed> findByUserEqualsAndDateEquals(
+            @Param("user") User user,
+            @Param("date") Date date
+    );
+
+    @Query(
+            "SELECT DISTINCT exercise FROM Exercise exercise, ExercisePerformed exercisePerformed "
+                + "WHERE exercise = exercisePerformed.exercise "
+                + "AND exercisePerformed.user = :user "
+                + "AND exercisePerformed.date BETWEEN :startDate AND :endDate "
+                + "ORDER BY exercise.description ASC"
+    )
+
+    List<Exercise> findByUserPerformedWithinRange(
+            @Param("user") User user,
+            @Param("startDate") Date startDate,
+            @Param("endDate") Date endDate
+    );
+
+    /**
+     * Returns every exercise performed by a user over a date range, with each one's exercise fetched in the same
+     * query.  Used for rebuilding ReportData across a whole range at once, rather than querying it one date at a time.
+     */
+    @Query(
+            "SELECT exercisePerformed FROM ExercisePerformed exercisePerformed JOIN FETCH exercisePerformed.exercise "
+                + "WHERE exercisePerformed.user = :user "
+                + "AND exercisePerformed.date BETWEEN :startDate AND :endDate"
+    )
+
+    List<ExercisePerformed> findByUserPerformedBetween(
+            @Param("user") User user,
+            @Param("startDate") Date startDate,
+            @Param("endDate") Date endDate
+    );
+
+}
@@ -0,0 +1,87 @@
+package com.vb.fitnessapp.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map of cached values, each of which expires at its own given time.  An expired entry is dropped when
+ * it's next looked up.  The cache holds at most "maxSize" entries:  once it's full, expired entries are swept out
+ * before adding another, and if that frees nothing then the cache is simply cleared.  That's crude, but everything
+ * cached this way is cheap enough to look up again, and it needs no bookkeeping on reads.
+ */
+public final class ExpiringCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public ExpiringCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the value cached for the given key, or null if there's none or it has expired.
+     */
+    public V get(final K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.getExpiresTime() > System.currentTimeMillis()) {
+            return entry.getValue();
+        }
+        // Leave it be if it's just been replaced by a fresh one
+        entries.remove(key, entry);
+        return null;
+    }
+
+    /**
+     * Caches the given value until "expiresTime" (in epoch millis), replacing any value already cached for the key.
+     */
+    public void put(
+            final K key,
+            final V value,
+            final long expiresTime
+    ) {
+        if (entries.size() >= maxSize) {
+            final long now = System.currentTimeMillis();
+            entries.values().removeIf(entry -> entry.getExpiresTime() <= now);
+            if (entries.size() >= maxSize) {
+                entries.clear();
+            }
+        }
+        entries.put(key, new Entry<>(value, expiresTime));
+    }
+
+    public void remove(final K key) {
+        entries.remove(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * A cached value, with the time at which it expires.
+     */
+    static class Entry<V> {
+
+        private final V value;
+        private final long expiresTime;
+
+        public Entry(final V value, final long expiresTime) {
+            this.value = value;
+            this.expiresTime = expiresTime;
+        }
+
+
+        public final V getValue() {
+            return value;
+        }
+
+
+        public final long getExpiresTime() {
+            return expiresTime;
+        }
+    }
+
+}
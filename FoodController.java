@@ -34,9 +34,9 @@ final class FoodController extends AbstractController {
             @PathVariable(name = "date") final String dateString,
             final HttpServletRequest request
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        final Date date = dateString == null ? todaySqlDateForUser(userDTO) : stringToSqlDate(dateString);
-        return foodService.findEatenOnDate(userDTO.getId(), date);
+        final UUID userId = currentUserId(request);
+        final Date date = dateString == null ? todaySqlDateForUser(request) : stringToSqlDate(dateString);
+        return foodService.findEatenOnDate(userId, date);
     }
 
     @PostMapping("/foodeaten")
@@ -44,12 +44,12 @@ final class FoodController extends AbstractController {
             @RequestBody final Map<String, Object> payload,
             final HttpServletRequest request
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
+        final UUID userId = currentUserId(request);
         final String foodIdString = (String) payload.get("id");
         final String dateString = (String) payload.get("date");
-        final Date date = dateString == null ? todaySqlDateForUser(userDTO) : stringToSqlDate(dateString);
+        final Date date = dateString == null ? todaySqlDateForUser(request) : stringToSqlDate(dateString);
         final UUID foodId = UUID.fromString(foodIdString);
-        return foodService.addFoodEaten(userDTO.getId(), foodId, date);
+        return foodService.addFoodEaten(userId, foodId, date);
     }
 
     @PutMapping("/foodeaten/{id}")
@@ -65,8 +65,7 @@ final class FoodController extends AbstractController {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return null;
         }
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        if (!foodEatenDTO.getUserId().equals(userDTO.getId())) {
+        if (!foodEatenDTO.getUserId().equals(currentUserId(request))) {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             return null;
         }
@@ -96,8 +95,7 @@ final class FoodController extends AbstractController {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        if (!foodEatenDTO.getUserId().equals(userDTO.getId())) {
+        if (!foodEatenDTO.getUserId().equals(currentUserId(request))) {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             return;
         }
@@ -110,9 +108,9 @@ final class FoodController extends AbstractController {
             @PathVariable(name = "date") final String dateString,
             final HttpServletRequest request
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        final Date date = dateString == null ? todaySqlDateForUser(userDTO) : stringToSqlDate(dateString);
-        return foodService.findEatenRecently(userDTO.getId(), date);
+        final UUID userId = currentUserId(request);
+        final Date date = dateString == null ? todaySqlDateForUser(request) : stringToSqlDate(dateString);
+        return foodService.findEatenRecently(userId, date);
     }
 
 
@@ -130,8 +128,7 @@ final class FoodController extends AbstractController {
             @PathVariable final String searchString,
             final HttpServletRequest request
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        return foodService.searchFoods(userDTO.getId(), searchString);
+        return foodService.searchFoods(currentUserId(request), searchString);
     }
 
     @RequestMapping(value = "/food/get/{foodId}")
@@ -140,10 +137,9 @@ final class FoodController extends AbstractController {
             @PathVariable final String foodId,
             final HttpServletRequest request
     ) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
         FoodDTO foodDTO = foodService.getFoodById(UUID.fromString(foodId));
         // Only return foods that are visible to the requesting user
-        if (foodDTO.getOwnerId() != null && !foodDTO.getOwnerId().equals(userDTO.getId())) {
+        if (foodDTO.getOwnerId() != null && !foodDTO.getOwnerId().equals(currentUserId(request))) {
             foodDTO = null;
         }
         return foodDTO;
@@ -0,0 +1,56 @@
+package com.vb.fitnessapp.service;
+
+import com.vb.fitnessapp.dto.HistogramDTO;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram with fixed bucket bounds, for the metrics of the ReportData update pipeline.  Each value is
+ * counted in the first bucket whose (inclusive) upper bound it doesn't exceed, or in a final overflow bucket.
+ */
+final class Histogram {
+
+    private final long[] upperBounds;
+    private final LongAdder[] bucketCounts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram(final long... upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.bucketCounts = new LongAdder[upperBounds.length + 1];
+        for (int index = 0; index < bucketCounts.length; index++) {
+            bucketCounts[index] = new LongAdder();
+        }
+    }
+
+
+    void record(final long value) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+            bucket++;
+        }
+        bucketCounts[bucket].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * A point-in-time copy of the histogram.  The buckets are keyed by "<=" and their upper bound (or ">" and the last
+     * upper bound, for the overflow bucket), and aren't cumulative.
+     */
+
+    HistogramDTO snapshot() {
+        final Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int index = 0; index < upperBounds.length; index++) {
+            buckets.put("<=" + upperBounds[index], bucketCounts[index].sum());
+        }
+        buckets.put(">" + upperBounds[upperBounds.length - 1], bucketCounts[upperBounds.length].sum());
+        return new HistogramDTO(count.sum(), sum.sum(), max.get(), buckets);
+    }
+
+}
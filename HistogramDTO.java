@@ -0,0 +1,60 @@
+package com.vb.fitnessapp.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class HistogramDTO {
+
+    private long count;
+    private long sum;
+    private long max;
+    private Map<String, Long> buckets;
+
+    public HistogramDTO(
+            final long count,
+            final long sum,
+            final long max,
+            final Map<String, Long> buckets
+    ) {
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+        this.buckets = new LinkedHashMap<>(buckets);
+    }
+
+    public HistogramDTO() {
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(final long count) {
+        this.count = count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public void setSum(final long sum) {
+        this.sum = sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public void setMax(final long max) {
+        this.max = max;
+    }
+
+    public Map<String, Long> getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(final Map<String, Long> buckets) {
+        this.buckets = buckets;
+    }
+
+}
@@ -1,30 +1,63 @@
 package com.vb.fitnessapp.config;
 
+import com.vb.fitnessapp.config.RouteTable.RouteType;
+import com.vb.fitnessapp.config.TokenRefresher.RefreshedTokens;
+import com.vb.fitnessapp.service.ExpiringCache;
+import com.vb.fitnessapp.service.TokenRevocationService;
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureException;
 import org.springframework.web.filter.GenericFilterBean;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
 import java.util.Optional;
 
 class JwtFilter extends GenericFilterBean {
 
-    final static private List<String> EXCLUDED_URIS = Arrays.asList(
-            "/login.html",
-            "/api/auth/userpass",
-            "/favicon.ico"
-    );
+    /**
+     * Which routes need authentication, and how an unauthenticated request to each is turned away.  Anything not
+     * declared here is a page.  Static resources are normally answered by StaticResourceFilter before this filter is
+     * ever reached, and are declared public here only for requests which that filter passes on (e.g. a POST).
+     */
+    static final RouteTable ROUTES = new RouteTable(RouteType.PAGE)
+            .route("/login.html", RouteType.PUBLIC)
+            .route("/favicon.ico", RouteType.PUBLIC)
+            .route("/static/**", RouteType.PUBLIC)
+            .route("/api/**", RouteType.API)
+            .route("/api/auth/userpass", RouteType.PUBLIC)
+            .route("/api/auth/refresh", RouteType.PUBLIC)
+            .route("/api/auth/logout", RouteType.PAGE)
+            .route("/exercise/bycategory/**", RouteType.API)
+            .route("/exercise/search/**", RouteType.API)
+            .route("/report/get", RouteType.API)
+            .route("/report/rebuild", RouteType.API)
+            .route("/report/metrics", RouteType.API);
+
+    /**
+     * Most requests carry a token that an earlier request has already verified (food.html alone makes several AJAX calls
+     * per page), so the verified claims are cached by token.  A token is only ever a cache hit when it's the exact same
+     * signed string, so skipping the signature check for it is safe.  Entries are dropped once their token expires, or
+     * once it's revoked... the revocation check is still made on every hit.  At most MAX_CACHED_TOKENS are cached (see
+     * ExpiringCache).
+     */
+    private static final int MAX_CACHED_TOKENS = 10000;
+
+    private final ExpiringCache<String, Claims> verifiedTokens = new ExpiringCache<>(MAX_CACHED_TOKENS);
+
+    private final TokenRevocationService tokenRevocationService;
+    private final TokenRefresher tokenRefresher;
+
+    JwtFilter(
+            final TokenRevocationService tokenRevocationService,
+            final TokenRefresher tokenRefresher
+    ) {
+        this.tokenRevocationService = tokenRevocationService;
+        this.tokenRefresher = tokenRefresher;
+    }
 
     @Override
     public void doFilter(
@@ -33,13 +66,9 @@ class JwtFilter extends GenericFilterBean {
             final FilterChain chain
     ) throws IOException, ServletException {
         final HttpServletRequest httpServletRequest = (HttpServletRequest) request;
-        // TODO: More robust route matching
-        // TODO: Will probably need separate filters for the "page load" stuff, versus the AJAX "api" stuff
         // TODO: Make "page load" stuff use cookies, and "api" stuff use headers exclusively
-        if (
-                EXCLUDED_URIS.contains(httpServletRequest.getRequestURI())
-                    || httpServletRequest.getRequestURI().startsWith("/static")
-        ) {
+        final RouteType routeType = ROUTES.match(routedPath(httpServletRequest));
+        if (routeType == RouteType.PUBLIC) {
             chain.doFilter(request, response);
             return;
         }
@@ -47,33 +76,87 @@ class JwtFilter extends GenericFilterBean {
         final String token =
             Optional.ofNullable(httpServletRequest.getHeader("Authorization")).orElse("").startsWith("Bearer ")
                 ? httpServletRequest.getHeader("Authorization").substring(7)
-                : Arrays.stream(Optional.ofNullable(httpServletRequest.getCookies()).orElse(new Cookie[0]))
-                    .filter(cookie -> cookie.getName().equals("Authorization"))
-                    .findFirst()
-                    .orElse(new Cookie("Authorization", ""))
-                    .getValue();
-        if (token.isEmpty()) {
-            logger.error("No valid Authorization header or cookie value found");
-            ((HttpServletResponse) response).sendRedirect("/login.html");
-            return;
-        }
+                : JwtTokens.cookieValue(httpServletRequest, JwtTokens.ACCESS_TOKEN_COOKIE);
 
-        Claims claims;
-        try {
-            claims = Jwts.parser().setSigningKey("secretkey").parseClaimsJws(token).getBody();
-        } catch (final SignatureException e) {
-            logger.error("Invalid token");
-            ((HttpServletResponse) response).sendRedirect("/login.html");
-            return;
+        Claims claims = verifiedTokens.get(token);
+        if (claims != null && isRevoked(claims)) {
+            verifiedTokens.remove(token);
+            claims = null;
+        } else if (claims == null && !token.isEmpty()) {
+            claims = JwtTokens.parseAccessToken(token);
+            if (claims != null && isRevoked(claims)) {
+                claims = null;
+            } else if (claims != null) {
+                cacheVerifiedToken(token, claims);
+            }
         }
 
-        if (claims.getExpiration().before(new Date())) {
-            ((HttpServletResponse) response).sendRedirect("/login.html?logout=true");
+        if (claims == null) {
+            // No usable access token, so try renewing it from the refresh token
+            claims = refresh(httpServletRequest, (HttpServletResponse) response);
+        }
+        if (claims == null) {
+            logger.error(token.isEmpty() ? "No valid Authorization header or cookie value found" : "Invalid or expired token");
+            if (routeType == RouteType.API) {
+                // A redirect to the login page is no use to a script
+                ((HttpServletResponse) response).setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            } else {
+                ((HttpServletResponse) response).sendRedirect(token.isEmpty() ? "/login.html" : "/login.html?logout=true");
+            }
             return;
         }
 
         request.setAttribute("email", claims.get("email"));
+        // Tokens issued before these claims were added won't have them, and AbstractController falls back to the email
+        if (claims.get("userId") != null) {
+            request.setAttribute("userId", claims.get("userId"));
+            request.setAttribute("timeZone", claims.get("timeZone"));
+            request.setAttribute("profileVersion", claims.get("profileVersion"));
+        }
         chain.doFilter(request, response);
     }
 
+
+    /**
+     * The path the request is routed by, which is what the routes have to be matched against.  The request URI is the
+     * raw one, so "/static/../api/user" or "/static/..;/api/user" would match "/static/**" even though the container
+     * routes it to "/api/user".  The servlet path and path info are decoded and normalized by the container, just as it
+     * routes them.
+     */
+    static String routedPath(final HttpServletRequest request) {
+        return request.getServletPath() + Optional.ofNullable(request.getPathInfo()).orElse("");
+    }
+
+    /**
+     * Issues a new access token from the request's refresh token cookie, if it has a valid one (see TokenRefresher), and
+     * sends it back as the "Authorization" cookie.  The refresh token itself is replaced too once it's past half its
+     * lifetime.  Returns the new access token's claims, or null if there's no valid refresh token.
+     */
+    private Claims refresh(
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) {
+        final RefreshedTokens refreshedTokens =
+                tokenRefresher.refresh(JwtTokens.cookieValue(request, JwtTokens.REFRESH_TOKEN_COOKIE));
+        if (refreshedTokens == null) {
+            return null;
+        }
+        response.addHeader("Set-Cookie", JwtTokens.accessTokenCookie(refreshedTokens.getAccessToken()));
+        if (refreshedTokens.getRefreshToken() != null) {
+            response.addHeader("Set-Cookie", JwtTokens.refreshTokenCookie(refreshedTokens.getRefreshToken()));
+        }
+        final Claims claims = JwtTokens.parseAccessToken(refreshedTokens.getAccessToken());
+        cacheVerifiedToken(refreshedTokens.getAccessToken(), claims);
+        return claims;
+    }
+
+    /** A lookup in TokenRevocationService's in-memory Bloom filter, with no database I/O. */
+    private boolean isRevoked(final Claims claims) {
+        return tokenRevocationService.isRevoked(claims.getId(), (String) claims.get("userId"), claims.getIssuedAt());
+    }
+
+    private void cacheVerifiedToken(final String token, final Claims claims) {
+        verifiedTokens.put(token, claims, claims.getExpiration().getTime());
+    }
+
 }
@@ -0,0 +1,184 @@
+package com.vb.fitnessapp.config;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and parses the signed tokens used for authentication.  There are two kinds:
+ *
+ * <ul>
+ *     <li>An access token, in the "Authorization" cookie (or header), which JwtFilter checks on every request.  It's
+ *     short-lived, and carries the email, user id, time zone and profile version claims described in
+ *     AuthController.issueToken().</li>
+ *     <li>A refresh token, in an HttpOnly "Refresh" cookie, carrying the same claims plus a "type" of "refresh".  When
+ *     the access token is missing or has expired, JwtFilter uses this to issue a new one with no password check (see
+ *     TokenRefresher), and scripts sending the access token as a header can do the same through "/api/auth/refresh".
+ *     Once a refresh token is past half its lifetime it's replaced too, so that a user who keeps coming back never has
+ *     to log in again.</li>
+ * </ul>
+ *
+ * Every token has a unique id ("jti"), so that it can be revoked on its own (see TokenRevocationService).
+ *
+ * Before refresh tokens, every token expired exactly one day after login, so users who logged in at the same time of
+ * day all came back through the (deliberately slow) BCrypt password check together the next day.
+ *
+ * TODO: Make the secret key value dynamic... pulled from environment variable or properties file or whatever
+ */
+public final class JwtTokens {
+
+    public static final String ACCESS_TOKEN_COOKIE = "Authorization";
+    public static final String REFRESH_TOKEN_COOKIE = "Refresh";
+
+    public static final long ACCESS_TOKEN_TTL_IN_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final long REFRESH_TOKEN_TTL_IN_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static final String SECRET_KEY = "secretkey";
+    private static final String TYPE_CLAIM = "type";
+    private static final String REFRESH_TYPE = "refresh";
+
+    private JwtTokens() {
+    }
+
+    public static String issueAccessToken(
+            final String email,
+            final UUID userId,
+            final String timeZone,
+            final int profileVersion
+    ) {
+        return issue(email, userId.toString(), timeZone, profileVersion, false, ACCESS_TOKEN_TTL_IN_MILLIS);
+    }
+
+    public static String issueRefreshToken(
+            final String email,
+            final UUID userId,
+            final String timeZone,
+            final int profileVersion
+    ) {
+        return issue(email, userId.toString(), timeZone, profileVersion, true, REFRESH_TOKEN_TTL_IN_MILLIS);
+    }
+
+    /**
+     * A "Set-Cookie" header value for the access token.  It's readable by scripts, just like the cookie which
+     * "login.html" sets from the login response.
+     */
+    public static String accessTokenCookie(final String accessToken) {
+        return ACCESS_TOKEN_COOKIE + "=" + accessToken + "; Path=/";
+    }
+
+    /** A "Set-Cookie" header value for the refresh token.  Scripts never need it, so it's HttpOnly. */
+    public static String refreshTokenCookie(final String refreshToken) {
+        return REFRESH_TOKEN_COOKIE + "=" + refreshToken + "; Path=/; Max-Age="
+                + TimeUnit.MILLISECONDS.toSeconds(REFRESH_TOKEN_TTL_IN_MILLIS) + "; HttpOnly";
+    }
+
+    /** A "Set-Cookie" header value which deletes the named cookie, e.g. on logout. */
+    public static String expiredCookie(final String name) {
+        return name + "=; Path=/; Max-Age=0";
+    }
+
+    public static String cookieValue(
+            final HttpServletRequest request,
+            final String name
+    ) {
+        return Arrays.stream(Optional.ofNullable(request.getCookies()).orElse(new Cookie[0]))
+                .filter(cookie -> cookie.getName().equals(name))
+                .findFirst()
+                .map(Cookie::getValue)
+                .orElse("");
+    }
+
+    /**
+     * Returns the claims of a correctly signed, unexpired access token, or null otherwise.  Refresh tokens are never
+     * accepted here.
+     */
+    public static Claims parseAccessToken(final String token) {
+        final Claims claims = parse(token);
+        return claims == null || isRefreshToken(claims) ? null : claims;
+    }
+
+    /** Returns the claims of a correctly signed, unexpired refresh token, or null otherwise. */
+    public static Claims parseRefreshToken(final String token) {
+        final Claims claims = parse(token);
+        return claims != null && isRefreshToken(claims) ? claims : null;
+    }
+
+    /**
+     * Issues an access token for the user the given refresh token belongs to.  The other claims are passed in rather
+     * than copied from the refresh token, so that they're as current as the user's profile (see TokenRefresher).
+     */
+    static String refreshAccessToken(
+            final Claims refreshClaims,
+            final String email,
+            final String timeZone,
+            final int profileVersion
+    ) {
+        return issue(email, (String) refreshClaims.get("userId"), timeZone, profileVersion, false, ACCESS_TOKEN_TTL_IN_MILLIS);
+    }
+
+    /**
+     * Issues a replacement for the given refresh token, with the given claims and a full lifetime, if it's past half of
+     * its own lifetime.  Returns null otherwise.
+     */
+    static String slideRefreshToken(
+            final Claims refreshClaims,
+            final String email,
+            final String timeZone,
+            final int profileVersion
+    ) {
+        final long remainingMillis = refreshClaims.getExpiration().getTime() - System.currentTimeMillis();
+        return remainingMillis < REFRESH_TOKEN_TTL_IN_MILLIS / 2
+                ? issue(email, (String) refreshClaims.get("userId"), timeZone, profileVersion, true, REFRESH_TOKEN_TTL_IN_MILLIS)
+                : null;
+    }
+
+
+    private static Claims parse(final String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return Jwts.parser().setSigningKey(SECRET_KEY).parseClaimsJws(token).getBody();
+        } catch (final JwtException e) {
+            // A bad signature, an expired token, or just garbage
+            return null;
+        }
+    }
+
+    private static boolean isRefreshToken(final Claims claims) {
+        return REFRESH_TYPE.equals(claims.get(TYPE_CLAIM));
+    }
+
+    private static String issue(
+            final String email,
+            final String userId,
+            final String timeZone,
+            final int profileVersion,
+            final boolean refresh,
+            final long ttlInMillis
+    ) {
+        final Date now = new Date();
+        return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
+                .setSubject(email)
+                .claim("email", email)
+                .claim("userId", userId)
+                .claim("timeZone", timeZone)
+                .claim("profileVersion", profileVersion)
+                .claim(TYPE_CLAIM, refresh ? REFRESH_TYPE : null)
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + ttlInMillis))
+                .signWith(SignatureAlgorithm.HS256, SECRET_KEY)
+                .compact();
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.vb.fitnessapp.config;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.*;
+
+public class JwtTokensTest {
+
+    @Test
+    public void testIssueAndParse() {
+        final UUID userId = UUID.randomUUID();
+        final String accessToken = JwtTokens.issueAccessToken("someone@example.com", userId, "America/New_York", 3);
+        final String refreshToken = JwtTokens.issueRefreshToken("someone@example.com", userId, "America/New_York", 3);
+
+        // Each kind of token is only accepted as that kind
+        final Claims accessClaims = JwtTokens.parseAccessToken(accessToken);
+        assertNotNull(accessClaims);
+        assertEquals(userId.toString(), accessClaims.get("userId"));
+        assertEquals(3, accessClaims.get("profileVersion"));
+        assertNull(JwtTokens.parseRefreshToken(accessToken));
+        final Claims refreshClaims = JwtTokens.parseRefreshToken(refreshToken);
+        assertNotNull(refreshClaims);
+        assertNull(JwtTokens.parseAccessToken(refreshToken));
+
+        // A refreshed access token carries the refresh token's user id and the given claims, and is an access token
+        final Claims refreshedClaims = JwtTokens.parseAccessToken(
+                JwtTokens.refreshAccessToken(refreshClaims, "someone@example.com", "Europe/London", 4));
+        assertNotNull(refreshedClaims);
+        assertEquals(userId.toString(), refreshedClaims.get("userId"));
+        assertEquals("Europe/London", refreshedClaims.get("timeZone"));
+        assertEquals(4, refreshedClaims.get("profileVersion"));
+
+        // A refresh token is only replaced once it's past half its lifetime
+        assertNull(JwtTokens.slideRefreshToken(refreshClaims, "someone@example.com", "Europe/London", 4));
+        final long now = System.currentTimeMillis();
+        refreshClaims.setExpiration(new Date(now + JwtTokens.REFRESH_TOKEN_TTL_IN_MILLIS / 2 - TimeUnit.MINUTES.toMillis(1)));
+        final Claims slidClaims = JwtTokens.parseRefreshToken(
+                JwtTokens.slideRefreshToken(refreshClaims, "someone@example.com", "Europe/London", 4));
+        assertNotNull(slidClaims);
+        assertEquals(userId.toString(), slidClaims.get("userId"));
+        assertEquals(4, slidClaims.get("profileVersion"));
+        assertFalse(refreshClaims.getId().equals(slidClaims.getId()));
+        assertTrue(slidClaims.getExpiration().getTime() > now + JwtTokens.REFRESH_TOKEN_TTL_IN_MILLIS / 2);
+
+        // Expired, tampered with, or garbage tokens parse to nothing
+        final String expiredToken = Jwts.builder()
+                .claim("userId", userId.toString())
+                .setExpiration(new Date(now - TimeUnit.MINUTES.toMillis(1)))
+                .signWith(SignatureAlgorithm.HS256, (String) ReflectionTestUtils.getField(JwtTokens.class, "SECRET_KEY"))
+                .compact();
+        assertNull(JwtTokens.parseAccessToken(expiredToken));
+        final String[] accessParts = accessToken.split("\\.");
+        final String[] refreshParts = refreshToken.split("\\.");
+        final String tamperedToken = accessParts[0] + "." + refreshParts[1] + "." + accessParts[2];
+        assertNull(JwtTokens.parseAccessToken(tamperedToken));
+        assertNull(JwtTokens.parseRefreshToken(tamperedToken));
+        final String foreignToken = Jwts.builder()
+                .claim("userId", userId.toString())
+                .signWith(SignatureAlgorithm.HS256, "someotherkey")
+                .compact();
+        assertNull(JwtTokens.parseAccessToken(foreignToken));
+        assertNull(JwtTokens.parseAccessToken("garbage"));
+        assertNull(JwtTokens.parseAccessToken(null));
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.vb.fitnessapp.config;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Serves the Brotli (".br") or gzip (".gz") variant of a static resource, when the build made one (see "build.gradle")
+ * and the client accepts that encoding.  Brotli is preferred, as it's the smaller of the two.  This is the same idea as
+ * Spring's GzipResourceResolver, with Brotli added.
+ */
+final class PrecompressedResourceResolver implements ResourceResolver {
+
+    @Override
+    public Resource resolveResource(
+            final HttpServletRequest request,
+            final String requestPath,
+            final List<? extends Resource> locations,
+            final ResourceResolverChain chain
+    ) {
+        final Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource == null || request == null) {
+            return resource;
+        }
+        final String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return resource;
+        }
+        for (final String encoding : new String[] {"br", "gzip"}) {
+            if (acceptEncoding.toLowerCase().contains(encoding)) {
+                final Resource encoded = findVariant(resource, encoding.equals("br") ? ".br" : ".gz");
+                if (encoded != null) {
+                    return new EncodedResource(resource, encoded, encoding);
+                }
+            }
+        }
+        return resource;
+    }
+
+    @Override
+    public String resolveUrlPath(
+            final String resourcePath,
+            final List<? extends Resource> locations,
+            final ResourceResolverChain chain
+    ) {
+        return chain.resolveUrlPath(resourcePath, locations);
+    }
+
+
+    private static Resource findVariant(
+            final Resource resource,
+            final String extension
+    ) {
+        try {
+            final Resource variant = resource.createRelative(resource.getFilename() + extension);
+            return variant.exists() ? variant : null;
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * An encoded variant of a resource, which otherwise passes for the original... in particular its file name, from
+     * which the response's content type is worked out.
+     */
+    private static final class EncodedResource extends AbstractResource implements HttpResource {
+
+        private final Resource original;
+        private final Resource encoded;
+        private final String encoding;
+
+        EncodedResource(
+                final Resource original,
+                final Resource encoded,
+                final String encoding
+        ) {
+            this.original = original;
+            this.encoded = encoded;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return encoded.getInputStream();
+        }
+
+        @Override
+        public boolean exists() {
+            return encoded.exists();
+        }
+
+        @Override
+        public boolean isReadable() {
+            return encoded.isReadable();
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return encoded.getURL();
+        }
+
+        @Override
+        public URI getURI() throws IOException {
+            return encoded.getURI();
+        }
+
+        @Override
+        public File getFile() throws IOException {
+            return encoded.getFile();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return encoded.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return encoded.lastModified();
+        }
+
+        @Override
+        public Resource createRelative(final String relativePath) throws IOException {
+            return encoded.createRelative(relativePath);
+        }
+
+        @Override
+        public String getFilename() {
+            return original.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return encoded.getDescription();
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            final HttpHeaders headers = original instanceof HttpResource
+                    ? ((HttpResource) original).getResponseHeaders()
+                    : new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_ENCODING, encoding);
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            return headers;
+        }
+    }
+
+}
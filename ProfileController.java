@@ -1,8 +1,11 @@
 package com.vb.fitnessapp.controller;
 
+import com.vb.fitnessapp.config.JwtTokens;
 import com.vb.fitnessapp.domain.User;
 import com.vb.fitnessapp.dto.UserDTO;
 import com.vb.fitnessapp.dto.WeightDTO;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -13,6 +16,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 final class ProfileController extends AbstractController {
@@ -30,7 +34,8 @@ final class ProfileController extends AbstractController {
     @PostMapping(value = "/api/user")
     public final void saveProfile(
             @RequestBody final Map<String, Object> payload,
-            final HttpServletRequest request
+            final HttpServletRequest request,
+            final HttpServletResponse response
     ) throws IOException {
         final UserDTO userDTO = currentAuthenticatedUser(request);
         userDTO.setGender(User.Gender.fromString((String) payload.get("gender")));
@@ -41,13 +46,19 @@ final class ProfileController extends AbstractController {
         userDTO.setLastName((String) payload.get("lastName"));
         userDTO.setTimeZone((String) payload.get("timeZone"));
         userService.updateUser(userDTO);
+        for (final String cookie : tokenCookies(userDTO)) {
+            response.addHeader("Set-Cookie", cookie);
+        }
     }
 
+    /**
+     * Like AuthController.doLogin(), the password check and hashing run on UserService's password hashing pool, and the
+     * response is completed asynchronously once they're done.
+     */
     @PostMapping(value = "/api/user/password")
-    public final String savePassword(
+    public final CompletableFuture<ResponseEntity<String>> savePassword(
             @RequestBody final Map<String, Object> payload,
-            final HttpServletRequest request,
-            final HttpServletResponse response
+            final HttpServletRequest request
     ) {
         final String currentPassword = (String) payload.get("currentPassword");
         final String newPassword = (String) payload.get("newPassword");
@@ -55,16 +66,23 @@ final class ProfileController extends AbstractController {
 
         final UserDTO userDTO = currentAuthenticatedUser(request);
         if (!newPassword.equals(reenterNewPassword)) {
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            return "The \"New Password\" and \"Re-enter New Password\" fields do not match";
-        } else if (!userService.verifyPassword(userDTO, currentPassword)) {
-            // "Current Password" field doesn't match the user's current password
-            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
-            return "The \"Current Password\" field does not match your current password";
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body("The \"New Password\" and \"Re-enter New Password\" fields do not match"));
         }
 
-        userService.updateUser(userDTO, newPassword);
-        return "Password changed";
+        return userService.verifyPasswordAsync(userDTO, currentPassword)
+                .thenCompose(verified -> {
+                    if (!verified) {
+                        // "Current Password" field doesn't match the user's current password
+                        return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                .body("The \"Current Password\" field does not match your current password"));
+                    }
+                    return userService.updateUserAsync(userDTO, newPassword)
+                            .thenApply(ignored -> ResponseEntity.ok()
+                                    .header("Set-Cookie", tokenCookies(userDTO))
+                                    .body("Password changed"));
+                })
+                .exceptionally(throwable -> passwordPoolRejection(throwable, "Too many password changes, please try again shortly"));
     }
 
     @GetMapping(value = "/api/user/weight/{date}")
@@ -101,4 +119,17 @@ final class ProfileController extends AbstractController {
         userService.updateWeight(userDTO, date, weight);
     }
 
+    /**
+     * Updating the profile bumps its version, which leaves the claims in the caller's current tokens stale (see
+     * AbstractController.todaySqlDateForUser()).  So the caller's access and refresh token cookies are replaced, with
+     * these "Set-Cookie" header values for tokens carrying the new values.
+     */
+    private String[] tokenCookies(final UserDTO userDTO) {
+        final int profileVersion = userService.findProfileVersion(userDTO.getId());
+        return new String[] {
+                JwtTokens.accessTokenCookie(AuthController.issueToken(userDTO, profileVersion)),
+                JwtTokens.refreshTokenCookie(AuthController.issueRefreshToken(userDTO, profileVersion))
+        };
+    }
+
 }
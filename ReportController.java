@@ -1,24 +1,55 @@
 package com.vb.fitnessapp.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vb.fitnessapp.dto.ReportDataDTO;
+import com.vb.fitnessapp.dto.ReportDataMetricsDTO;
+import com.vb.fitnessapp.dto.ReportDataRebuildDTO;
 import com.vb.fitnessapp.dto.UserDTO;
+import com.vb.fitnessapp.service.ReportDataDownsampler;
+import com.vb.fitnessapp.service.ReportDataRebuildService;
+import com.vb.fitnessapp.service.ReportDataSeriesEncoder;
 import com.vb.fitnessapp.service.ReportDataService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 @Controller
 final class ReportController extends AbstractController {
 
     private final ReportDataService reportDataService;
+    private final ReportDataRebuildService reportDataRebuildService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Comma-separated email addresses of the users allowed to start and monitor a fleet-wide ReportData rebuild.
+     * There are no admin roles in the user model, so this is configured in the "application.yml" config file instead.
+     */
+    @Value("${reportdata.admin-emails:}")
+    private String adminEmails;
 
     @Autowired
-    public ReportController(final ReportDataService reportDataService) {
+    public ReportController(
+            final ReportDataService reportDataService,
+            final ReportDataRebuildService reportDataRebuildService,
+            final ObjectMapper objectMapper
+    ) {
         this.reportDataService = reportDataService;
+        this.reportDataRebuildService = reportDataRebuildService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping(value = "/report")
@@ -26,11 +57,148 @@ final class ReportController extends AbstractController {
         return REPORT_TEMPLATE;
     }
 
+    /**
+     * The optional "start" and "end" parameters (yyyy-MM-dd, both inclusive) limit the dates returned, and the optional
+     * "granularity" parameter ("daily", "weekly" or "monthly") rolls them up.  With none of them, the user's entire daily
+     * history is returned.  The optional "maxPoints" parameter then downsamples the result for charting, keeping its
+     * visual peaks and troughs (see ReportDataDownsampler).
+     */
     @GetMapping(value = "/report/get")
     @ResponseBody
-    public final List<ReportDataDTO> getReportData(final HttpServletRequest request) {
-        final UserDTO userDTO = currentAuthenticatedUser(request);
-        return reportDataService.findByUser(userDTO.getId());
+    public final List<ReportDataDTO> getReportData(
+            @RequestParam(value = "start", required = false) final String startString,
+            @RequestParam(value = "end", required = false) final String endString,
+            @RequestParam(value = "granularity", required = false) final String granularityString,
+            @RequestParam(value = "maxPoints", required = false) final Integer maxPoints,
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) {
+        final ReportDataService.Granularity granularity = stringToGranularity(granularityString);
+        if (granularity == null || (maxPoints != null && maxPoints < 3)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+        final List<ReportDataDTO> reportData = reportDataService.findByUser(currentUserId(request), optionalSqlDate(startString), optionalSqlDate(endString), granularity);
+        return maxPoints == null ? reportData : ReportDataDownsampler.downsample(reportData, maxPoints);
+    }
+
+    /**
+     * The same as "getReportData()" above, but for clients sending an "Accept" header of ReportDataSeriesEncoder.MEDIA_TYPE,
+     * which get the rows in that compact binary encoding rather than as JSON.
+     */
+    @GetMapping(value = "/report/get", produces = ReportDataSeriesEncoder.MEDIA_TYPE)
+    public final void getReportDataSeries(
+            @RequestParam(value = "start", required = false) final String startString,
+            @RequestParam(value = "end", required = false) final String endString,
+            @RequestParam(value = "granularity", required = false) final String granularityString,
+            @RequestParam(value = "maxPoints", required = false) final Integer maxPoints,
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) throws IOException {
+        final List<ReportDataDTO> reportData = getReportData(startString, endString, granularityString, maxPoints, request, response);
+        if (reportData == null) {
+            return;
+        }
+        final byte[] encoded = ReportDataSeriesEncoder.encode(reportData);
+        response.setContentType(ReportDataSeriesEncoder.MEDIA_TYPE);
+        response.setContentLength(encoded.length);
+        response.getOutputStream().write(encoded);
+    }
+
+    /**
+     * The same as "getReportData()" above, but with "stream=true" the rows are written to the response one at a time as
+     * they're read from the database, rather than first being collected into a list.  This keeps memory use flat for
+     * users with very long histories.  Downsampling needs the whole series at once, so "maxPoints" isn't supported here.
+     */
+    @GetMapping(value = "/report/get", params = "stream=true")
+    public final void streamReportData(
+            @RequestParam(value = "start", required = false) final String startString,
+            @RequestParam(value = "end", required = false) final String endString,
+            @RequestParam(value = "granularity", required = false) final String granularityString,
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) throws IOException {
+        final ReportDataService.Granularity granularity = stringToGranularity(granularityString);
+        if (granularity == null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        final UUID userId = currentUserId(request);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        try (final JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            reportDataService.streamByUser(userId, optionalSqlDate(startString), optionalSqlDate(endString), granularity, reportData -> {
+                try {
+                    objectMapper.writeValue(generator, reportData);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    @PostMapping(value = "/report/rebuild")
+    @ResponseBody
+    public final ReportDataRebuildDTO startRebuild(
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) {
+        if (!isAdmin(currentAuthenticatedUser(request))) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return null;
+        }
+        return reportDataRebuildService.startRebuild();
+    }
+
+    @GetMapping(value = "/report/rebuild")
+    @ResponseBody
+    public final ReportDataRebuildDTO getRebuildProgress(
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) {
+        if (!isAdmin(currentAuthenticatedUser(request))) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return null;
+        }
+        final ReportDataRebuildDTO progress = reportDataRebuildService.findProgress();
+        if (progress == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+        return progress;
+    }
+
+    /**
+     * The ReportData update pipeline's metrics (see "ReportDataService.getMetrics()"), for admins only.
+     */
+    @GetMapping(value = "/report/metrics")
+    @ResponseBody
+    public final ReportDataMetricsDTO getMetrics(
+            final HttpServletRequest request,
+            final HttpServletResponse response
+    ) {
+        if (!isAdmin(currentAuthenticatedUser(request))) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return null;
+        }
+        return reportDataService.getMetrics();
+    }
+
+
+    private ReportDataService.Granularity stringToGranularity(final String granularityString) {
+        return granularityString == null || granularityString.isEmpty()
+                ? ReportDataService.Granularity.DAILY
+                : ReportDataService.Granularity.fromString(granularityString);
+    }
+
+    private java.sql.Date optionalSqlDate(final String dateString) {
+        return dateString == null || dateString.isEmpty() ? null : stringToSqlDate(dateString);
+    }
+
+    private boolean isAdmin(final UserDTO userDTO) {
+        return userDTO != null && Arrays.stream(adminEmails.split(","))
+                .map(String::trim)
+                .anyMatch(email -> !email.isEmpty() && email.equalsIgnoreCase(userDTO.getEmail()));
     }
 
 }
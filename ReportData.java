@@ -50,6 +50,8 @@ public final class ReportData {
         this.user = user;
         this.date = (Date) date.clone();
         this.pounds = pounds;
+        this.netCalories = netCalories;
+        this.netPoints = netPoints;
     }
 
     public ReportData() {
@@ -0,0 +1,53 @@
+package com.vb.fitnessapp.config;
+
+import com.vb.fitnessapp.service.ReportDataService;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.UUID;
+
+/**
+ * Turns away writes which would schedule a ReportData update, with a "503 Service Unavailable" and a "Retry-After"
+ * header, while ReportDataService's pending budget is used up.  This pushes back on bulk imports and scripts at the
+ * edge, rather than letting them pile deferred work into the outbox for every other user to wait behind.  Reads are
+ * never turned away, and neither are writes by a user who already has an update pending, since those merge into it at
+ * no extra cost.
+ *
+ * "Retry-After" is how often deferred updates are picked up again (see "reportdata.lease-poll-in-millis"), rounded up
+ * to whole seconds.
+ */
+final class ReportDataBackpressureInterceptor extends HandlerInterceptorAdapter {
+
+    private final ReportDataService reportDataService;
+    private final String retryAfterSeconds;
+
+    ReportDataBackpressureInterceptor(
+            final ReportDataService reportDataService,
+            final long leasePollInMillis
+    ) {
+        this.reportDataService = reportDataService;
+        this.retryAfterSeconds = String.valueOf(Math.max(1, (leasePollInMillis + 999) / 1000));
+    }
+
+    @Override
+    public boolean preHandle(
+            final HttpServletRequest request,
+            final HttpServletResponse response,
+            final Object handler
+    ) {
+        if ("GET".equalsIgnoreCase(request.getMethod()) || !reportDataService.isOverloaded()) {
+            return true;
+        }
+        // Read from the login token's claims (see JwtFilter), so this costs no lookup.  Older tokens without the claim
+        // simply get no exemption.
+        final Object userId = request.getAttribute("userId");
+        if (userId != null && reportDataService.hasPendingUpdate(UUID.fromString((String) userId))) {
+            return true;
+        }
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", retryAfterSeconds);
+        return false;
+    }
+
+}
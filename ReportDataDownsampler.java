@@ -0,0 +1,157 @@
+package com.vb.fitnessapp.service;
+
+import com.vb.fitnessapp.dto.ReportDataDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Downsamples ReportData for charting, using the Largest-Triangle-Three-Buckets algorithm (Sveinn Steinarsson, "Downsampling
+ * Time Series for Visual Representation", 2013).  The rows are split into evenly sized buckets, and from each bucket
+ * the row forming the largest triangle with the row picked from the previous bucket and the average of the next bucket
+ * is kept.  Unlike plain averaging or every-nth-row sampling, this keeps the visual peaks and troughs of a series.
+ *
+ * Each of the three charted series (weight, net calories and net points) is downsampled on its own, since a peak in one
+ * is usually not a peak in the others.  The rows picked for any of them are returned, so each series gets an equal share
+ * of the requested number of points.
+ */
+public final class ReportDataDownsampler {
+
+    private static final List<ToDoubleFunction<ReportDataDTO>> SERIES = Arrays.asList(
+            ReportDataDTO::getPounds,
+            ReportDataDTO::getNetCalories,
+            ReportDataDTO::getNetPoints
+    );
+
+    private ReportDataDownsampler() {
+    }
+
+    /**
+     * Returns at most "maxPoints" of the given rows (which must be in date order), or all of them if there are no more
+     * than that already.
+     */
+
+    public static List<ReportDataDTO> downsample(final List<ReportDataDTO> reportData, final int maxPoints) {
+        if (reportData.size() <= maxPoints) {
+            return reportData;
+        }
+        final double[] days = new double[reportData.size()];
+        for (int index = 0; index < days.length; index++) {
+            days[index] = reportData.get(index).getDate().toLocalDate().toEpochDay();
+        }
+        // Too few points for three per series, so each picks as many as there are to go round (see "mergeIndexes()").
+        final int pointsPerSeries = maxPoints < 3 * SERIES.size() ? maxPoints : maxPoints / SERIES.size();
+        final List<TreeSet<Integer>> seriesIndexes = new ArrayList<>(SERIES.size());
+        for (final ToDoubleFunction<ReportDataDTO> series : SERIES) {
+            final TreeSet<Integer> indexes = new TreeSet<>();
+            selectIndexes(days, values(reportData, series), pointsPerSeries, indexes);
+            seriesIndexes.add(indexes);
+        }
+        final TreeSet<Integer> selectedIndexes = mergeIndexes(seriesIndexes, reportData.size(), maxPoints);
+
+        final List<ReportDataDTO> downsampled = new ArrayList<>(selectedIndexes.size());
+        for (final int index : selectedIndexes) {
+            downsampled.add(reportData.get(index));
+        }
+        return downsampled;
+    }
+
+
+    /**
+     * Merges the indexes picked for each series, keeping at most "maxPoints" of them.  With at least three points per
+     * series the union always fits.  Below that the series' picks overlap the limit, so the first and last rows are kept,
+     * and then the series take turns adding their picks in between until "maxPoints" is reached.
+     */
+    private static TreeSet<Integer> mergeIndexes(
+            final List<TreeSet<Integer>> seriesIndexes,
+            final int length,
+            final int maxPoints
+    ) {
+        final TreeSet<Integer> selectedIndexes = new TreeSet<>();
+        selectedIndexes.add(0);
+        selectedIndexes.add(length - 1);
+        final List<Iterator<Integer>> iterators = new ArrayList<>(seriesIndexes.size());
+        for (final TreeSet<Integer> indexes : seriesIndexes) {
+            iterators.add(indexes.subSet(0, false, length - 1, false).iterator());
+        }
+        boolean added = true;
+        while (added && selectedIndexes.size() < maxPoints) {
+            added = false;
+            for (final Iterator<Integer> iterator : iterators) {
+                if (iterator.hasNext() && selectedIndexes.size() < maxPoints) {
+                    selectedIndexes.add(iterator.next());
+                    added = true;
+                }
+            }
+        }
+        return selectedIndexes;
+    }
+
+    private static double[] values(final List<ReportDataDTO> reportData, final ToDoubleFunction<ReportDataDTO> series) {
+        final double[] values = new double[reportData.size()];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = series.applyAsDouble(reportData.get(index));
+        }
+        return values;
+    }
+
+    /**
+     * Adds to "selectedIndexes" the indexes of the "threshold" points picked by LTTB from the series (x, y).  The first
+     * and last points are always picked.
+     */
+
+    static void selectIndexes(
+            final double[] x,
+            final double[] y,
+            final int threshold,
+            final TreeSet<Integer> selectedIndexes
+    ) {
+        final int length = x.length;
+        if (threshold >= length || threshold < 3) {
+            for (int index = 0; index < length; index++) {
+                selectedIndexes.add(index);
+            }
+            return;
+        }
+        final double bucketSize = (double) (length - 2) / (threshold - 2);
+        int previousIndex = 0;
+        selectedIndexes.add(previousIndex);
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average the next bucket, as the third point of the triangle.
+            final int nextBucketStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            final int nextBucketEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double averageX = 0.0;
+            double averageY = 0.0;
+            for (int index = nextBucketStart; index < nextBucketEnd; index++) {
+                averageX += x[index];
+                averageY += y[index];
+            }
+            averageX /= nextBucketEnd - nextBucketStart;
+            averageY /= nextBucketEnd - nextBucketStart;
+
+            // Pick the point in this bucket forming the largest triangle with the previously picked point and that average.
+            final int bucketStart = (int) Math.floor(bucket * bucketSize) + 1;
+            final int bucketEnd = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double maxArea = -1.0;
+            int selectedIndex = bucketStart;
+            for (int index = bucketStart; index < bucketEnd; index++) {
+                final double area = Math.abs(
+                        (x[previousIndex] - averageX) * (y[index] - y[previousIndex])
+                                - (x[previousIndex] - x[index]) * (averageY - y[previousIndex])
+                );
+                if (area > maxArea) {
+                    maxArea = area;
+                    selectedIndex = index;
+                }
+            }
+            selectedIndexes.add(selectedIndex);
+            previousIndex = selectedIndex;
+        }
+        selectedIndexes.add(length - 1);
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.vb.fitnessapp.dto;
+
+public final class ReportDataMetricsDTO {
+
+    private int pendingUpdates;
+    private int queuedTasks;
+    private int activeTasks;
+    private long updatesRequested;
+    private long updatesScheduled;
+    private long updatesCoalesced;
+    private long updatesSuperseded;
+    private long updatesCancelled;
+    private long updatesDeferred;
+    private long updatesDemoted;
+    private long tasksCompleted;
+    private long tasksFailed;
+    private HistogramDTO taskDurationMillis;
+    private HistogramDTO daysRecomputed;
+    private HistogramDTO statementsPerTask;
+
+    public ReportDataMetricsDTO(
+            final int pendingUpdates,
+            final int queuedTasks,
+            final int activeTasks,
+            final long updatesRequested,
+            final long updatesScheduled,
+            final long updatesCoalesced,
+            final long updatesSuperseded,
+            final long updatesCancelled,
+            final long updatesDeferred,
+            final long updatesDemoted,
+            final long tasksCompleted,
+            final long tasksFailed,
+            final HistogramDTO taskDurationMillis,
+            final HistogramDTO daysRecomputed,
+            final HistogramDTO statementsPerTask
+    ) {
+        this.pendingUpdates = pendingUpdates;
+        this.queuedTasks = queuedTasks;
+        this.activeTasks = activeTasks;
+        this.updatesRequested = updatesRequested;
+        this.updatesScheduled = updatesScheduled;
+        this.updatesCoalesced = updatesCoalesced;
+        this.updatesSuperseded = updatesSuperseded;
+        this.updatesCancelled = updatesCancelled;
+        this.updatesDeferred = updatesDeferred;
+        this.updatesDemoted = updatesDemoted;
+        this.tasksCompleted = tasksCompleted;
+        this.tasksFailed = tasksFailed;
+        this.taskDurationMillis = taskDurationMillis;
+        this.daysRecomputed = daysRecomputed;
+        this.statementsPerTask = statementsPerTask;
+    }
+
+    public ReportDataMetricsDTO() {
+    }
+
+    /** Users with an update pending or running (the entries in ReportDataService's "scheduledUserUpdates"). */
+    public int getPendingUpdates() {
+        return pendingUpdates;
+    }
+
+    public void setPendingUpdates(final int pendingUpdates) {
+        this.pendingUpdates = pendingUpdates;
+    }
+
+    /** Tasks waiting in the worker pool's queue, including ones whose delay hasn't yet run out. */
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public void setQueuedTasks(final int queuedTasks) {
+        this.queuedTasks = queuedTasks;
+    }
+
+    public int getActiveTasks() {
+        return activeTasks;
+    }
+
+    public void setActiveTasks(final int activeTasks) {
+        this.activeTasks = activeTasks;
+    }
+
+    public long getUpdatesRequested() {
+        return updatesRequested;
+    }
+
+    public void setUpdatesRequested(final long updatesRequested) {
+        this.updatesRequested = updatesRequested;
+    }
+
+    public long getUpdatesScheduled() {
+        return updatesScheduled;
+    }
+
+    public void setUpdatesScheduled(final long updatesScheduled) {
+        this.updatesScheduled = updatesScheduled;
+    }
+
+    /** Requests already covered by a pending update, and so absorbed by it. */
+    public long getUpdatesCoalesced() {
+        return updatesCoalesced;
+    }
+
+    public void setUpdatesCoalesced(final long updatesCoalesced) {
+        this.updatesCoalesced = updatesCoalesced;
+    }
+
+    /** Pending updates replaced by one spanning both their range and a new request's. */
+    public long getUpdatesSuperseded() {
+        return updatesSuperseded;
+    }
+
+    public void setUpdatesSuperseded(final long updatesSuperseded) {
+        this.updatesSuperseded = updatesSuperseded;
+    }
+
+    /** Superseded updates cancelled before their task started (the rest were already running). */
+    public long getUpdatesCancelled() {
+        return updatesCancelled;
+    }
+
+    public void setUpdatesCancelled(final long updatesCancelled) {
+        this.updatesCancelled = updatesCancelled;
+    }
+
+    /** Updates only written to the outbox, because the pending budget was used up. */
+    public long getUpdatesDeferred() {
+        return updatesDeferred;
+    }
+
+    public void setUpdatesDeferred(final long updatesDeferred) {
+        this.updatesDeferred = updatesDeferred;
+    }
+
+    /** Updates held back behind smaller ones, because of how many days they span. */
+    public long getUpdatesDemoted() {
+        return updatesDemoted;
+    }
+
+    public void setUpdatesDemoted(final long updatesDemoted) {
+        this.updatesDemoted = updatesDemoted;
+    }
+
+    public long getTasksCompleted() {
+        return tasksCompleted;
+    }
+
+    public void setTasksCompleted(final long tasksCompleted) {
+        this.tasksCompleted = tasksCompleted;
+    }
+
+    public long getTasksFailed() {
+        return tasksFailed;
+    }
+
+    public void setTasksFailed(final long tasksFailed) {
+        this.tasksFailed = tasksFailed;
+    }
+
+    public HistogramDTO getTaskDurationMillis() {
+        return taskDurationMillis;
+    }
+
+    public void setTaskDurationMillis(final HistogramDTO taskDurationMillis) {
+        this.taskDurationMillis = taskDurationMillis;
+    }
+
+    public HistogramDTO getDaysRecomputed() {
+        return daysRecomputed;
+    }
+
+    public void setDaysRecomputed(final HistogramDTO daysRecomputed) {
+        this.daysRecomputed = daysRecomputed;
+    }
+
+    public HistogramDTO getStatementsPerTask() {
+        return statementsPerTask;
+    }
+
+    public void setStatementsPerTask(final HistogramDTO statementsPerTask) {
+        this.statementsPerTask = statementsPerTask;
+    }
+
+}
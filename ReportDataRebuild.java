@@ -0,0 +1,183 @@
+package com.vb.fitnessapp.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.sql.Timestamp;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A fleet-wide ReportData rebuild job, and its checkpoint.  Users are rebuilt in batches in user id order, and
+ * "lastUserId" is the last user of the most recently finished batch... so that a job interrupted by a restart can
+ * resume from there, rather than starting over.
+ *
+ * A user whose rebuild throws is counted in "usersFailed" rather than "usersDone", and a job with any such users
+ * finishes as COMPLETE_WITH_ERRORS (or as FAILED, if no user was rebuilt at all).
+ *
+ * The node running a job is its "owner", and it refreshes "heartbeatTime" at every checkpoint.  Another node may only
+ * take a running job over once that heartbeat has gone stale.
+ */
+@Entity
+@Table(name = "report_data_rebuild")
+public final class ReportDataRebuild {
+
+    public enum Status {
+
+        RUNNING, COMPLETE, COMPLETE_WITH_ERRORS, FAILED
+
+    }
+
+    @Id
+    @Column(name = "id", columnDefinition = "BINARY(16)")
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "last_user_id", columnDefinition = "BINARY(16)")
+    private UUID lastUserId;
+
+    @Column(name = "users_total", nullable = false)
+    private Long usersTotal = 0L;
+
+    @Column(name = "users_done", nullable = false)
+    private Long usersDone = 0L;
+
+    @Column(name = "users_failed", nullable = false)
+    private Long usersFailed = 0L;
+
+    @Column(name = "rows_written", nullable = false)
+    private Long rowsWritten = 0L;
+
+    @Column(name = "started_time", nullable = false)
+    private Timestamp startedTime;
+
+    @Column(name = "last_updated_time", nullable = false)
+    private Timestamp lastUpdatedTime;
+
+    @Column(name = "owner")
+    private String owner;
+
+    @Column(name = "heartbeat_time")
+    private Timestamp heartbeatTime;
+
+    public ReportDataRebuild(
+            final UUID id,
+            final long usersTotal,
+            final Timestamp startedTime
+    ) {
+        this.id = Optional.ofNullable(id).orElse(UUID.randomUUID());
+        this.status = Status.RUNNING;
+        this.usersTotal = usersTotal;
+        this.startedTime = (Timestamp) startedTime.clone();
+        this.lastUpdatedTime = (Timestamp) startedTime.clone();
+    }
+
+    public ReportDataRebuild() {
+    }
+
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(final UUID id) {
+        this.id = id;
+    }
+
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(final Status status) {
+        this.status = status;
+    }
+
+
+    public UUID getLastUserId() {
+        return lastUserId;
+    }
+
+    public void setLastUserId(final UUID lastUserId) {
+        this.lastUserId = lastUserId;
+    }
+
+
+    public Long getUsersTotal() {
+        return usersTotal;
+    }
+
+    public void setUsersTotal(final Long usersTotal) {
+        this.usersTotal = usersTotal;
+    }
+
+
+    public Long getUsersDone() {
+        return usersDone;
+    }
+
+    public void setUsersDone(final Long usersDone) {
+        this.usersDone = usersDone;
+    }
+
+
+    public Long getUsersFailed() {
+        return usersFailed;
+    }
+
+    public void setUsersFailed(final Long usersFailed) {
+        this.usersFailed = usersFailed;
+    }
+
+
+    public Long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void setRowsWritten(final Long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+
+    public Timestamp getStartedTime() {
+        return (Timestamp) startedTime.clone();
+    }
+
+    public void setStartedTime(final Timestamp startedTime) {
+        this.startedTime = (Timestamp) startedTime.clone();
+    }
+
+
+    public Timestamp getLastUpdatedTime() {
+        return (Timestamp) lastUpdatedTime.clone();
+    }
+
+    public void setLastUpdatedTime(final Timestamp lastUpdatedTime) {
+        this.lastUpdatedTime = (Timestamp) lastUpdatedTime.clone();
+    }
+
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(final String owner) {
+        this.owner = owner;
+    }
+
+
+    public Timestamp getHeartbeatTime() {
+        return heartbeatTime == null ? null : (Timestamp) heartbeatTime.clone();
+    }
+
+    public void setHeartbeatTime(final Timestamp heartbeatTime) {
+        this.heartbeatTime = heartbeatTime == null ? null : (Timestamp) heartbeatTime.clone();
+    }
+
+}
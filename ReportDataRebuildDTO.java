@@ -0,0 +1,117 @@
+package com.vb.fitnessapp.dto;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+public final class ReportDataRebuildDTO {
+
+    private UUID id;
+    private String status;
+    private long usersTotal;
+    private long usersDone;
+    private long usersFailed;
+    private long rowsWritten;
+    private Timestamp startedTime;
+    private Timestamp lastUpdatedTime;
+    private Long etaInSeconds;
+
+    public ReportDataRebuildDTO(
+            final UUID id,
+            final String status,
+            final long usersTotal,
+            final long usersDone,
+            final long usersFailed,
+            final long rowsWritten,
+            final Timestamp startedTime,
+            final Timestamp lastUpdatedTime,
+            final Long etaInSeconds
+    ) {
+        this.id = id;
+        this.status = status;
+        this.usersTotal = usersTotal;
+        this.usersDone = usersDone;
+        this.usersFailed = usersFailed;
+        this.rowsWritten = rowsWritten;
+        this.startedTime = (Timestamp) startedTime.clone();
+        this.lastUpdatedTime = (Timestamp) lastUpdatedTime.clone();
+        this.etaInSeconds = etaInSeconds;
+    }
+
+    public ReportDataRebuildDTO() {
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(final UUID id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(final String status) {
+        this.status = status;
+    }
+
+    public long getUsersTotal() {
+        return usersTotal;
+    }
+
+    public void setUsersTotal(final long usersTotal) {
+        this.usersTotal = usersTotal;
+    }
+
+    public long getUsersDone() {
+        return usersDone;
+    }
+
+    public void setUsersDone(final long usersDone) {
+        this.usersDone = usersDone;
+    }
+
+    /** Users whose rebuild threw, and who are not counted in "usersDone". */
+    public long getUsersFailed() {
+        return usersFailed;
+    }
+
+    public void setUsersFailed(final long usersFailed) {
+        this.usersFailed = usersFailed;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void setRowsWritten(final long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+    public Timestamp getStartedTime() {
+        return (Timestamp) startedTime.clone();
+    }
+
+    public void setStartedTime(final Timestamp startedTime) {
+        this.startedTime = (Timestamp) startedTime.clone();
+    }
+
+    public Timestamp getLastUpdatedTime() {
+        return (Timestamp) lastUpdatedTime.clone();
+    }
+
+    public void setLastUpdatedTime(final Timestamp lastUpdatedTime) {
+        this.lastUpdatedTime = (Timestamp) lastUpdatedTime.clone();
+    }
+
+    /** Null until enough of the current run has finished to estimate from, and once the job has stopped. */
+    public Long getEtaInSeconds() {
+        return etaInSeconds;
+    }
+
+    public void setEtaInSeconds(final Long etaInSeconds) {
+        this.etaInSeconds = etaInSeconds;
+    }
+
+}
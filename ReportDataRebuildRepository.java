@@ -0,0 +1,47 @@
+package com.vb.fitnessapp.repository;
+
+import com.vb.fitnessapp.domain.ReportDataRebuild;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+public interface ReportDataRebuildRepository extends CrudRepository<ReportDataRebuild, UUID> {
+
+
+    ReportDataRebuild findFirstByOrderByStartedTimeDesc();
+
+
+    ReportDataRebuild findFirstByStatusOrderByStartedTimeDesc(ReportDataRebuild.Status status);
+
+    /**
+     * Claims a rebuild job for "owner" and refreshes its heartbeat, provided the job still has the given status and is
+     * either unowned, already owned by "owner", or owned by a node whose heartbeat is older than "staleBefore".  Returns
+     * 1 if the job was claimed, or 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "UPDATE ReportDataRebuild reportDataRebuild "
+                    + "SET reportDataRebuild.owner = :owner, "
+                    + "reportDataRebuild.heartbeatTime = :now "
+                    + "WHERE reportDataRebuild.id = :id "
+                    + "AND reportDataRebuild.status = :status "
+                    + "AND (reportDataRebuild.owner IS NULL "
+                    + "OR reportDataRebuild.owner = :owner "
+                    + "OR reportDataRebuild.heartbeatTime < :staleBefore)"
+    )
+
+    int claim(
+            @Param("id") UUID id,
+            @Param("status") ReportDataRebuild.Status status,
+            @Param("owner") String owner,
+            @Param("now") Timestamp now,
+            @Param("staleBefore") Timestamp staleBefore
+    );
+
+}
@@ -0,0 +1,346 @@
+package com.vb.fitnessapp.service;
+
+import com.vb.fitnessapp.domain.ReportDataRebuild;
+import com.vb.fitnessapp.domain.User;
+import com.vb.fitnessapp.dto.ReportDataRebuildDTO;
+import com.vb.fitnessapp.repository.ReportDataRebuildRepository;
+import com.vb.fitnessapp.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds the ReportData rows of every user, across their entire history.  This is meant to be triggered by an admin
+ * after a change to how calories or points are calculated (e.g. in ExerciseService.calculatePointsBurned() or
+ * Food.getPoints()), since ordinary report updates only ever recompute the dates a user has edited.
+ *
+ * Users are read in batches, in user id order, and each batch is spread across a bounded worker pool.  The job is
+ * checkpointed in the "report_data_rebuild" table after every batch, and a job still marked as running when the
+ * application starts is resumed from its last checkpoint.  When several nodes share the database, a job is run only by
+ * the node which has claimed it, and another node takes it over only once the owner's heartbeat (refreshed at each
+ * checkpoint) is older than "reportdata.rebuild.heartbeat-timeout-in-millis".  Writes are throttled to a configurable number of
+ * ReportData rows per second, so that a rebuild doesn't starve the rest of the application of database capacity.
+ */
+@Service
+public final class ReportDataRebuildService {
+
+    private final UserRepository userRepository;
+    private final ReportDataRebuildRepository reportDataRebuildRepository;
+    private final ReportDataService reportDataService;
+
+    /** How many users are read, and then checkpointed, at a time. */
+    @Value("${reportdata.rebuild.batch-size:50}")
+    private int batchSize;
+
+    /** The ceiling on ReportData rows written per second, across all rebuild workers.  Zero means no limit. */
+    @Value("${reportdata.rebuild.max-rows-per-second:5000}")
+    private long maxRowsPerSecond;
+
+    /**
+     * How long a job's heartbeat may go without a refresh before another node can take it over.  This should comfortably
+     * exceed the time one batch takes.
+     */
+    @Value("${reportdata.rebuild.heartbeat-timeout-in-millis:600000}")
+    private long heartbeatTimeoutInMillis;
+
+    private final ExecutorService coordinatorThread;
+    private final ExecutorService rebuildThreadPool;
+
+    private final AtomicLong usersDone = new AtomicLong();
+    private final AtomicLong usersFailed = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private volatile ReportDataRebuild activeRebuild;
+    private volatile long runStartedNanos;
+    private volatile long runStartedUsersProcessed;
+    private long throttleNextFreeNanos;
+
+    /**
+     * The size of the worker pool can be set with "reportdata.rebuild.worker-threads" in the "application.yml" config
+     * file.  It defaults to 2, to leave most of the database to ordinary traffic.
+     */
+    @Autowired
+    public ReportDataRebuildService(
+            final UserRepository userRepository,
+            final ReportDataRebuildRepository reportDataRebuildRepository,
+            final ReportDataService reportDataService,
+            @Value("${reportdata.rebuild.worker-threads:2}") final int workerThreads
+    ) {
+        this.userRepository = userRepository;
+        this.reportDataRebuildRepository = reportDataRebuildRepository;
+        this.reportDataService = reportDataService;
+        this.coordinatorThread = Executors.newSingleThreadExecutor(daemonThreadFactory("reportdata-rebuild-coordinator"));
+        this.rebuildThreadPool = Executors.newFixedThreadPool(workerThreads, daemonThreadFactory("reportdata-rebuild"));
+    }
+
+    /**
+     * Starts a new rebuild job, unless one is already running (in which case that one's progress is returned instead).
+     * A job left running by a node whose heartbeat has gone stale is taken over, rather than started afresh.
+     */
+
+    public synchronized ReportDataRebuildDTO startRebuild() {
+        if (activeRebuild == null) {
+            final ReportDataRebuild runningRebuild = reportDataRebuildRepository.findFirstByStatusOrderByStartedTimeDesc(ReportDataRebuild.Status.RUNNING);
+            if (runningRebuild != null) {
+                resume(runningRebuild);
+                return findProgress();
+            }
+            final long now = System.currentTimeMillis();
+            final ReportDataRebuild rebuild = new ReportDataRebuild(
+                    UUID.randomUUID(),
+                    userRepository.count(),
+                    new Timestamp(now)
+            );
+            rebuild.setOwner(reportDataService.getNodeId());
+            rebuild.setHeartbeatTime(new Timestamp(now));
+            reportDataRebuildRepository.save(rebuild);
+            run(rebuild);
+        }
+        return findProgress();
+    }
+
+    /**
+     * Resumes a rebuild job which was still running when the application last shut down, unless another node has
+     * claimed it and is still running it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void resumeRebuild() {
+        final ReportDataRebuild rebuild = reportDataRebuildRepository.findFirstByStatusOrderByStartedTimeDesc(ReportDataRebuild.Status.RUNNING);
+        if (rebuild != null && activeRebuild == null) {
+            resume(rebuild);
+        }
+    }
+
+
+    private void resume(final ReportDataRebuild rebuild) {
+        if (!claim(rebuild)) {
+            System.out.printf("ReportData rebuild [%s] is being run by node [%s]%n", rebuild.getId(), rebuild.getOwner());
+            return;
+        }
+        System.out.printf("Resuming ReportData rebuild [%s] after user [%s] (%d of %d users done)%n", rebuild.getId(), rebuild.getLastUserId(), rebuild.getUsersDone(), rebuild.getUsersTotal());
+        run(rebuild);
+    }
+
+    /**
+     * Claims a running job for this node (or keeps hold of it, refreshing its heartbeat), and returns whether that
+     * succeeded.  The conditional update in "ReportDataRebuildRepository.claim()" makes sure that only one node wins.
+     */
+
+    private boolean claim(final ReportDataRebuild rebuild) {
+        final long now = System.currentTimeMillis();
+        final String owner = reportDataService.getNodeId();
+        final boolean claimed = reportDataRebuildRepository.claim(
+                rebuild.getId(),
+                ReportDataRebuild.Status.RUNNING,
+                owner,
+                new Timestamp(now),
+                new Timestamp(now - heartbeatTimeoutInMillis)
+        ) == 1;
+        if (claimed) {
+            rebuild.setOwner(owner);
+            rebuild.setHeartbeatTime(new Timestamp(now));
+        }
+        return claimed;
+    }
+
+    /**
+     * Returns the progress of the running rebuild job, or else of the most recent one (or null if there has never been
+     * one).  The ETA is extrapolated from how quickly users have been rebuilt since the job was started or resumed on
+     * this node.
+     */
+
+    public ReportDataRebuildDTO findProgress() {
+        final ReportDataRebuild active = activeRebuild;
+        final ReportDataRebuild rebuild = active != null ? active : reportDataRebuildRepository.findFirstByOrderByStartedTimeDesc();
+        if (rebuild == null) {
+            return null;
+        }
+        if (active == null) {
+            return new ReportDataRebuildDTO(
+                    rebuild.getId(),
+                    rebuild.getStatus().toString(),
+                    rebuild.getUsersTotal(),
+                    rebuild.getUsersDone(),
+                    rebuild.getUsersFailed(),
+                    rebuild.getRowsWritten(),
+                    rebuild.getStartedTime(),
+                    rebuild.getLastUpdatedTime(),
+                    null
+            );
+        }
+        final long done = usersDone.get();
+        final long failed = usersFailed.get();
+        final long processedThisRun = done + failed - runStartedUsersProcessed;
+        Long etaInSeconds = null;
+        if (processedThisRun > 0) {
+            final long elapsedNanos = System.nanoTime() - runStartedNanos;
+            final long remaining = Math.max(0, rebuild.getUsersTotal() - done - failed);
+            etaInSeconds = TimeUnit.NANOSECONDS.toSeconds(elapsedNanos / processedThisRun * remaining);
+        }
+        return new ReportDataRebuildDTO(
+                rebuild.getId(),
+                rebuild.getStatus().toString(),
+                rebuild.getUsersTotal(),
+                done,
+                failed,
+                rowsWritten.get(),
+                rebuild.getStartedTime(),
+                new Timestamp(System.currentTimeMillis()),
+                etaInSeconds
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinatorThread.shutdownNow();
+        rebuildThreadPool.shutdownNow();
+    }
+
+
+    private void run(final ReportDataRebuild rebuild) {
+        activeRebuild = rebuild;
+        usersDone.set(rebuild.getUsersDone());
+        usersFailed.set(rebuild.getUsersFailed());
+        rowsWritten.set(rebuild.getRowsWritten());
+        runStartedNanos = System.nanoTime();
+        runStartedUsersProcessed = rebuild.getUsersDone() + rebuild.getUsersFailed();
+        coordinatorThread.execute(() -> runBatches(rebuild));
+    }
+
+    /**
+     * Rebuilds one batch of users at a time, waiting for each batch to finish before checkpointing it and moving on.
+     * If this is interrupted by a shutdown, then the job is left marked as running, so that it resumes from the last
+     * checkpoint (repeating at most the one unfinished batch).
+     */
+
+    private void runBatches(final ReportDataRebuild rebuild) {
+        try {
+            List<User> batch = nextBatch(rebuild.getLastUserId());
+            while (!batch.isEmpty()) {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (final User user : batch) {
+                    futures.add(rebuildThreadPool.submit(() -> rebuildUser(user)));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+                rebuild.setLastUserId(batch.get(batch.size() - 1).getId());
+                if (!checkpoint(rebuild)) {
+                    System.out.printf("ReportData rebuild [%s] was taken over by another node%n", rebuild.getId());
+                    return;
+                }
+                if (batch.size() < batchSize) {
+                    break;
+                }
+                batch = nextBatch(rebuild.getLastUserId());
+            }
+            rebuild.setStatus(usersFailed.get() == 0
+                    ? ReportDataRebuild.Status.COMPLETE
+                    : usersDone.get() == 0 ? ReportDataRebuild.Status.FAILED : ReportDataRebuild.Status.COMPLETE_WITH_ERRORS);
+            checkpoint(rebuild);
+            System.out.printf("ReportData rebuild [%s] finished as %s (%d users, %d failed, %d rows)%n", rebuild.getId(), rebuild.getStatus(), rebuild.getUsersDone(), rebuild.getUsersFailed(), rebuild.getRowsWritten());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.out.printf("Exception thrown during ReportData rebuild [%s]%n", rebuild.getId());
+            e.printStackTrace();
+            rebuild.setStatus(ReportDataRebuild.Status.FAILED);
+            checkpoint(rebuild);
+        } finally {
+            activeRebuild = null;
+        }
+    }
+
+    private List<User> nextBatch(final UUID lastUserId) {
+        return lastUserId == null
+                ? userRepository.findAllByOrderByIdAsc(new PageRequest(0, batchSize))
+                : userRepository.findByIdGreaterThanOrderByIdAsc(lastUserId, new PageRequest(0, batchSize));
+    }
+
+    /**
+     * Saves the job's progress, provided this node still owns it.  Returns false (saving nothing) if another node has
+     * taken it over meanwhile.
+     */
+
+    private boolean checkpoint(final ReportDataRebuild rebuild) {
+        if (!claim(rebuild)) {
+            return false;
+        }
+        rebuild.setUsersDone(usersDone.get());
+        rebuild.setUsersFailed(usersFailed.get());
+        rebuild.setRowsWritten(rowsWritten.get());
+        rebuild.setLastUpdatedTime(new Timestamp(System.currentTimeMillis()));
+        reportDataRebuildRepository.save(rebuild);
+        return true;
+    }
+
+    /**
+     * Rebuilds a single user.  A failure is logged and counted in "usersFailed", rather than failing the whole job over
+     * one user.
+     */
+
+    private void rebuildUser(final User user) {
+        final int rows;
+        try {
+            rows = reportDataService.rebuildUser(user);
+        } catch (Exception e) {
+            System.out.printf("Exception thrown while rebuilding ReportData for user [%s]%n", user.getEmail());
+            e.printStackTrace();
+            usersFailed.incrementAndGet();
+            return;
+        }
+        usersDone.incrementAndGet();
+        rowsWritten.addAndGet(rows);
+        try {
+            throttle(rows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Keeps the rows written across all workers under "maxRowsPerSecond".  Each call reserves the next slot of time
+     * needed for its rows, and then sleeps until that slot begins.
+     */
+
+    private void throttle(final int rows) throws InterruptedException {
+        if (maxRowsPerSecond <= 0 || rows == 0) {
+            return;
+        }
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final long slotStart = Math.max(throttleNextFreeNanos, now);
+            throttleNextFreeNanos = slotStart + TimeUnit.SECONDS.toNanos(rows) / maxRowsPerSecond;
+            waitNanos = slotStart - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String namePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.vb.fitnessapp.repository;
+
+import com.vb.fitnessapp.domain.ReportData;
+import com.vb.fitnessapp.domain.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.UUID;
+
+public interface ReportDataRepository extends CrudRepository<ReportData, UUID> {
+
+
+    List<ReportData> findByUserOrderByDateAsc(User user);
+
+
+    List<ReportData> findByUserAndDateOrderByDateAsc(User user, Date date);
+
+
+    List<ReportData> findByUserAndDateBetweenOrderByDateAsc(User user, Date startDate, Date endDate);
+
+    /**
+     * The first page of the same rows as "findByUserAndDateBetweenOrderByDateAsc".  Callers read the next page by
+     * starting again after the last date seen, rather than by offset, so that each page is a short indexed range read.
+     */
+
+    List<ReportData> findByUserAndDateBetweenOrderByDateAsc(User user, Date startDate, Date endDate, Pageable pageable);
+
+    /**
+     * Adds the given calorie and point deltas to the existing ReportData row for a single user and date, as a single
+     * UPDATE statement.  Returns the number of rows affected, which is zero when no row has been generated yet for
+     * that date (in which case the caller must fall back to a full recompute).
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "UPDATE ReportData reportData "
+                    + "SET reportData.netCalories = reportData.netCalories + :calories, "
+                    + "reportData.netPoints = reportData.netPoints + :points "
+                    + "WHERE reportData.user = :user "
+                    + "AND reportData.date = :date"
+    )
+
+    int applyDelta(
+            @Param("user") User user,
+            @Param("date") Date date,
+            @Param("calories") int calories,
+            @Param("points") double points
+    );
+
+}
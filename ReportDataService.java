@@ -0,0 +1,1623 @@
+package com.vb.fitnessapp.service;
+
+import com.vb.fitnessapp.config.StatementCountingDataSource;
+import com.vb.fitnessapp.domain.ExercisePerformed;
+import com.vb.fitnessapp.domain.FoodEaten;
+import com.vb.fitnessapp.domain.ReportData;
+import com.vb.fitnessapp.domain.ReportDataUpdate;
+import com.vb.fitnessapp.domain.User;
+import com.vb.fitnessapp.domain.Weight;
+import com.vb.fitnessapp.dto.ReportDataDTO;
+import com.vb.fitnessapp.dto.ReportDataMetricsDTO;
+import com.vb.fitnessapp.dto.converter.ReportDataToReportDataDTO;
+import com.vb.fitnessapp.repository.ExercisePerformedRepository;
+import com.vb.fitnessapp.repository.FoodEatenRepository;
+import com.vb.fitnessapp.repository.ReportDataRepository;
+import com.vb.fitnessapp.repository.ReportDataUpdateRepository;
+import com.vb.fitnessapp.repository.UserRepository;
+import com.vb.fitnessapp.repository.WeightRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static java.util.stream.Collectors.toList;
+
+@Service
+public final class ReportDataService {
+
+    /**
+     * How finely "findByUser()" should roll up the daily ReportData rows.  Weekly buckets start on Monday, and monthly
+     * buckets on the first of the month.  Each rolled-up granularity has its own table, kept current alongside the daily
+     * rows (see "writeRollUps()").
+     */
+    public enum Granularity {
+
+        DAILY(null), WEEKLY("report_week"), MONTHLY("report_month");
+
+        private final String rollUpTable;
+
+        Granularity(final String rollUpTable) {
+            this.rollUpTable = rollUpTable;
+        }
+
+
+        public static Granularity fromString(final String s) {
+            Granularity match = null;
+            for (final Granularity granularity : Granularity.values()) {
+                if (granularity.toString().equalsIgnoreCase(s)) {
+                    match = granularity;
+                }
+            }
+            return match;
+        }
+
+    }
+
+    private final UserRepository userRepository;
+    private final WeightRepository weightRepository;
+    private final FoodEatenRepository foodEatenRepository;
+    private final ExercisePerformedRepository exercisePerformedRepository;
+    private final ReportDataRepository reportDataRepository;
+    private final ReportDataUpdateRepository reportDataUpdateRepository;
+    private final ReportDataToReportDataDTO reportDataDTOConverter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    /**
+     * ReportDataUpdateTask writes its rows through plain JDBC batches rather than through ReportDataRepository, to
+     * avoid a round trip (plus a select-before-merge) for every single date in the range.
+     */
+    private static final String INSERT_REPORT_DATA_SQL =
+            "INSERT INTO report_data (id, user_id, date, pounds, net_calories, net_points) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_REPORT_DATA_SQL =
+            "UPDATE report_data SET pounds = ?, net_calories = ?, net_points = ? WHERE id = ?";
+
+    /**
+     * The "report_week" and "report_month" tables hold one row per user and week (or month), with the totals of the
+     * daily rows within it.  Both tables share the same columns, so each statement takes the table name as a format
+     * argument (always one of the Granularity constants, never user input).
+     */
+    private static final String SELECT_ROLL_UP_SQL =
+            "SELECT start_date, average_pounds, total_net_calories, total_net_points, days_logged FROM %s "
+                    + "WHERE user_id = ? AND start_date >= ? AND start_date < ? ORDER BY start_date ASC";
+    private static final String DELETE_ROLL_UP_SQL =
+            "DELETE FROM %s WHERE user_id = ? AND start_date >= ? AND start_date < ?";
+    private static final String INSERT_ROLL_UP_SQL =
+            "INSERT INTO %s (user_id, start_date, average_pounds, total_net_calories, total_net_points, days_logged) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String APPLY_ROLL_UP_DELTA_SQL =
+            "UPDATE %s SET total_net_calories = total_net_calories + ?, total_net_points = total_net_points + ? "
+                    + "WHERE user_id = ? AND start_date = ?";
+
+    /**
+     * New outbox rows are inserted through plain JDBC too, because a JPA save() of an entity with an assigned id is a
+     * merge... which, racing with another node, could silently overwrite that node's row instead of failing.
+     */
+    /** How many times "persistPendingUpdate()" retries against a row other nodes keep changing, before giving up. */
+    private static final int MAX_OUTBOX_ATTEMPTS = 5;
+
+    /** How many stored rows "streamByUser()" reads per page, and so per transaction. */
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private static final String INSERT_REPORT_DATA_UPDATE_SQL =
+            "INSERT INTO report_data_update (user_id, update_id, start_date, end_date, due_time) VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * By default, update tasks should be scheduled for 5 minutes in the future (i.e. 300000 milliseconds).  However,
+     * this can be overwritten in the "application.yml" config file... primarily so that unit tests can use
+     * a much shorter value.
+     */
+    @Value("${reportdata.update-delay-in-millis:300000}")
+    private long scheduleDelayInMillis;
+
+    /**
+     * How many pending updates are read at a time from the "report_data_update" outbox table, when resuming them after
+     * a restart.
+     */
+    @Value("${reportdata.outbox-batch-size:100}")
+    private int outboxBatchSize;
+
+    /**
+     * Set "reportdata.cluster-mode" to true when more than one application node shares the database.  Each node then
+     * claims a lease on a user's outbox row before recomputing that user, and periodically adopts pending updates left
+     * behind by other nodes (see "adoptOrphanedUpdates()").  Each node needs a distinct "reportdata.node-id", which
+     * defaults to a random one.
+     */
+    @Value("${reportdata.cluster-mode:false}")
+    private boolean clusterMode;
+
+    @Value("${reportdata.node-id:}")
+    private String nodeId;
+
+    /**
+     * How long a lease lasts.  This should comfortably exceed the longest update task, since another node may take over
+     * the update once it expires.
+     */
+    @Value("${reportdata.lease-duration-in-millis:900000}")
+    private long leaseDurationInMillis;
+
+    /**
+     * How often each node looks for orphaned updates in cluster mode.  This is also the grace period given to the node
+     * which scheduled an update to claim it, before other nodes consider it orphaned.
+     */
+    @Value("${reportdata.lease-poll-in-millis:60000}")
+    private long leasePollInMillis;
+
+    /**
+     * The budget of users who may have an update scheduled in memory at once.  Beyond it, an update for a user with
+     * nothing pending yet is only written to the outbox table, and is picked up from there once the backlog has room
+     * (see "adoptOrphanedUpdates()").  An update for a user who already has one pending is always merged into it, since
+     * that costs nothing extra.  While the budget is used up, "isOverloaded()" is true.
+     */
+    @Value("${reportdata.max-pending-updates:10000}")
+    private int maxPendingUpdates;
+
+    /**
+     * Updates spanning more than this many days (e.g. after an edit far back in a user's history) are held back by an
+     * extra "reportdata.large-update-delay-in-millis", so that the many small updates for today go ahead of them.
+     */
+    @Value("${reportdata.large-update-days:90}")
+    private int largeUpdateDays;
+
+    @Value("${reportdata.large-update-delay-in-millis:600000}")
+    private long largeUpdateDelayInMillis;
+
+    private final ScheduledThreadPoolExecutor reportDataUpdateThreadPool;
+    private final Map<UUID, ReportDataUpdateEntry> scheduledUserUpdates = new ConcurrentHashMap<>();
+
+    /**
+     * A lock per user with ReportData writes or update requests under way or waiting, so that two writes for the same
+     * user never overlap, while writes for different users never wait on each other.  Each entry is removed again once nobody holds or
+     * waits on it (see "UserLock").
+     */
+    private final Map<UUID, UserLock> userLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Counters and histograms for the update pipeline, reported by "getMetrics()".  A request to "updateUserFromDate()"
+     * either is coalesced into the user's pending update, or schedules a new one... which supersedes (and, if its task
+     * hasn't started yet, cancels) any pending update that didn't cover the request.
+     */
+    private final LongAdder updatesRequested = new LongAdder();
+    private final LongAdder updatesScheduled = new LongAdder();
+    private final LongAdder updatesCoalesced = new LongAdder();
+    private final LongAdder updatesSuperseded = new LongAdder();
+    private final LongAdder updatesCancelled = new LongAdder();
+    private final LongAdder updatesDeferred = new LongAdder();
+    private final LongAdder updatesDemoted = new LongAdder();
+    private final LongAdder tasksCompleted = new LongAdder();
+    private final LongAdder tasksFailed = new LongAdder();
+    private final Histogram taskDurationMillis = new Histogram(10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000);
+    private final Histogram daysRecomputed = new Histogram(1, 7, 31, 90, 365, 1825);
+    private final Histogram statementsPerTask = new Histogram(5, 10, 20, 50, 100, 250, 500);
+
+    /**
+     * The size of the worker pool running ReportDataUpdateTask's can be set with "reportdata.worker-threads" in the
+     * "application.yml" config file.  It defaults to the number of available processors.
+     *
+     * Entries in the "scheduledUserUpdates" map are removed by their own task once it finishes (see
+     * ReportDataUpdateTask.run()), or replaced when a newer update supersedes and cancels them.  So the map only ever
+     * holds updates which are still pending or running, and needs no periodic cleanup.
+     *
+     * Each entry is also mirrored in the "report_data_update" outbox table, so that pending updates survive a restart
+     * (see "resumePendingUpdates()").
+     */
+    @Autowired
+    public ReportDataService(
+            final UserRepository userRepository,
+            final WeightRepository weightRepository,
+            final FoodEatenRepository foodEatenRepository,
+            final ExercisePerformedRepository exercisePerformedRepository,
+            final ReportDataRepository reportDataRepository,
+            final ReportDataUpdateRepository reportDataUpdateRepository,
+            final ReportDataToReportDataDTO reportDataDTOConverter,
+            final JdbcTemplate jdbcTemplate,
+            final PlatformTransactionManager transactionManager,
+            @Value("${reportdata.worker-threads:0}") final int workerThreads
+    ) {
+        this.userRepository = userRepository;
+        this.weightRepository = weightRepository;
+        this.foodEatenRepository = foodEatenRepository;
+        this.exercisePerformedRepository = exercisePerformedRepository;
+        this.reportDataRepository = reportDataRepository;
+        this.reportDataUpdateRepository = reportDataUpdateRepository;
+        this.reportDataDTOConverter = reportDataDTOConverter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+
+        final int poolSize = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "reportdata-update-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.reportDataUpdateThreadPool = new ScheduledThreadPoolExecutor(poolSize, threadFactory);
+        // Superseded updates are cancelled long before their delay runs out, so drop them from the work queue right away.
+        this.reportDataUpdateThreadPool.setRemoveOnCancelPolicy(true);
+    }
+
+
+    /**
+     * Returns all of a user's ReportData.  When an update is still pending for the user, the dates in its range are
+     * computed on the fly and merged over the stored rows, so that the report reflects the user's latest edits rather
+     * than lagging behind them by the update delay.
+     */
+
+    public List<ReportDataDTO> findByUser(final UUID userId) {
+        return findByUser(userId, null, null, Granularity.DAILY);
+    }
+
+    /**
+     * Returns a user's ReportData between "startDate" and "endDate" (both inclusive, and either may be null for an open
+     * bound), rolled up to the given granularity.  Only the rows within the bounds are read from the database, so the
+     * cost of a request grows with the window being viewed rather than with the age of the account.
+     *
+     * A rolled-up row is dated on the first day of its week or month, has no id, and holds the averages per logged day
+     * of its weight, net calories and net points... so that it can be charted on the same "per day" axes as daily rows.
+     *
+     * The user's pending update is looked up just once per request, and only the part of its range inside the window
+     * is computed.  So a read whose window doesn't reach the pending range costs no more than one without it.
+     */
+
+    public List<ReportDataDTO> findByUser(
+            final UUID userId,
+            final Date startDate,
+            final Date endDate,
+            final Granularity granularity
+    ) {
+        final User user = userRepository.findOne(userId);
+        final ReportDataUpdateEntry pendingUpdate = findPendingUpdate(user);
+        return granularity == null || granularity == Granularity.DAILY
+                ? findDailyByUser(user, startDate, endDate, pendingUpdate)
+                : findRolledUpByUser(user, startDate, endDate, granularity, pendingUpdate);
+    }
+
+    /**
+     * The daily rows for "findByUser()", with any pending update overlaid.
+     */
+
+    private List<ReportDataDTO> findDailyByUser(
+            final User user,
+            final Date startDate,
+            final Date endDate,
+            final ReportDataUpdateEntry pendingUpdate
+    ) {
+        final List<ReportData> reportData = startDate == null && endDate == null
+                ? reportDataRepository.findByUserOrderByDateAsc(user)
+                : reportDataRepository.findByUserAndDateBetweenOrderByDateAsc(
+                        user,
+                        startDate == null ? new Date(0) : startDate,
+                        endDate == null ? Date.valueOf(lastDateToUpdate(user, null)) : endDate
+                );
+        final List<ReportDataDTO> reportDataDTOs = reportData.stream()
+                .map(reportDataDTOConverter::convert)
+                .collect(toList());
+        return overlayPendingUpdate(user, pendingUpdate, reportDataDTOs, startDate, endDate);
+    }
+
+    /**
+     * The weekly or monthly rows for "findByUser()".  Buckets lying wholly within the requested window are read from
+     * the rollup table, so a year-long view reads a few dozen rows rather than hundreds.  A partial bucket at either
+     * edge of the window is rolled up from the daily rows instead, as is every bucket from the start of a pending
+     * update's range onward, unless that range ends before the window's stored buckets (since the stored rollups won't
+     * reflect that update until it has run).
+     */
+
+    private List<ReportDataDTO> findRolledUpByUser(
+            final User user,
+            final Date startDate,
+            final Date endDate,
+            final Granularity granularity,
+            final ReportDataUpdateEntry pendingUpdate
+    ) {
+        final LocalDate lastDate = endDate == null ? lastDateToUpdate(user, null) : endDate.toLocalDate();
+        LocalDate storedFrom = startDate == null ? new Date(0).toLocalDate() : startDate.toLocalDate();
+        if (!bucketStart(storedFrom, granularity).equals(storedFrom)) {
+            storedFrom = nextBucketStart(storedFrom, granularity);
+        }
+        // With no end date, the current bucket is as complete as it can be (there's nothing after today), so it's stored too.
+        LocalDate storedUntil = endDate == null ? lastDate.plusDays(1) : bucketStart(lastDate.plusDays(1), granularity);
+        // A pending update which ended before the stored buckets begin leaves them all as they are.
+        if (pendingUpdate != null && !lastDateToUpdate(user, pendingUpdate.getEndDate()).isBefore(storedFrom)) {
+            final LocalDate pendingBucketStart = bucketStart(pendingUpdate.getStartDate().toLocalDate(), granularity);
+            if (pendingBucketStart.isBefore(storedUntil)) {
+                storedUntil = pendingBucketStart;
+            }
+        }
+        if (!storedFrom.isBefore(storedUntil)) {
+            return rollUp(findDailyByUser(user, startDate, endDate, pendingUpdate), granularity);
+        }
+
+        final List<ReportDataDTO> rolledUpReportData = new ArrayList<>();
+        if (startDate != null && storedFrom.isAfter(startDate.toLocalDate())) {
+            rolledUpReportData.addAll(rollUp(findDailyByUser(user, startDate, Date.valueOf(storedFrom.minusDays(1)), pendingUpdate), granularity));
+        }
+        rolledUpReportData.addAll(jdbcTemplate.query(
+                String.format(SELECT_ROLL_UP_SQL, granularity.rollUpTable),
+                (resultSet, rowNumber) -> new RollUpTotals(
+                        user.getId(),
+                        resultSet.getDate("start_date").toLocalDate(),
+                        resultSet.getDouble("average_pounds"),
+                        resultSet.getLong("total_net_calories"),
+                        resultSet.getDouble("total_net_points"),
+                        resultSet.getInt("days_logged")
+                ).toReportDataDTO(),
+                uuidToBytes(user.getId()),
+                Date.valueOf(storedFrom),
+                Date.valueOf(storedUntil)
+        ));
+        if (!storedUntil.isAfter(lastDate)) {
+            rolledUpReportData.addAll(rollUp(findDailyByUser(user, Date.valueOf(storedUntil), endDate, pendingUpdate), granularity));
+        }
+        return rolledUpReportData;
+    }
+
+    /**
+     * Streams a user's ReportData to "consumer" one row at a time, with the same bounds, rollup and pending-update overlay
+     * as "findByUser()".  The stored rows are read a page of "STREAM_PAGE_SIZE" at a time, each page starting after the
+     * last date of the one before, and each in its own short read-only transaction.  So neither a transaction nor a
+     * connection is held while the consumer writes to a slow client, and memory use stays flat no matter how long the
+     * user's history is (apart from the overlay, which is limited to a pending update's range).
+     */
+
+    public void streamByUser(
+            final UUID userId,
+            final Date startDate,
+            final Date endDate,
+            final Granularity granularity,
+            final Consumer<ReportDataDTO> consumer
+    ) {
+        final User user = userRepository.findOne(userId);
+        final RollUp rollUp = granularity == null || granularity == Granularity.DAILY
+                ? null
+                : new RollUp(granularity, totals -> consumer.accept(totals.toReportDataDTO()));
+        final Consumer<ReportDataDTO> downstream = rollUp == null ? consumer : rollUp;
+
+        // The overlay rows are merged in by date as the stored rows stream past.
+        final List<ReportDataDTO> overlay = overlayPendingUpdate(user, findPendingUpdate(user), new ArrayList<>(), startDate, endDate);
+        int overlayIndex = 0;
+        final Date lastDate = endDate == null ? Date.valueOf(lastDateToUpdate(user, null)) : endDate;
+        Date pageStart = startDate == null ? new Date(0) : startDate;
+        List<ReportDataDTO> page;
+        do {
+            final Date firstDate = pageStart;
+            page = readOnlyTransactionTemplate.execute(status ->
+                    reportDataRepository.findByUserAndDateBetweenOrderByDateAsc(user, firstDate, lastDate, new PageRequest(0, STREAM_PAGE_SIZE))
+                            .stream()
+                            .map(reportDataDTOConverter::convert)
+                            .collect(toList())
+            );
+            for (final ReportDataDTO storedData : page) {
+                while (overlayIndex < overlay.size() && overlay.get(overlayIndex).getDate().before(storedData.getDate())) {
+                    downstream.accept(overlay.get(overlayIndex++));
+                }
+                if (overlayIndex < overlay.size() && overlay.get(overlayIndex).getDate().equals(storedData.getDate())) {
+                    final ReportDataDTO overlaidData = overlay.get(overlayIndex++);
+                    overlaidData.setId(storedData.getId());
+                    downstream.accept(overlaidData);
+                } else {
+                    downstream.accept(storedData);
+                }
+            }
+            if (!page.isEmpty()) {
+                pageStart = Date.valueOf(page.get(page.size() - 1).getDate().toLocalDate().plusDays(1));
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+        while (overlayIndex < overlay.size()) {
+            downstream.accept(overlay.get(overlayIndex++));
+        }
+        if (rollUp != null) {
+            rollUp.finish();
+        }
+    }
+
+    /**
+     * Rolls daily rows (in date order) up into weekly or monthly ones, as described on "findByUser()" above.
+     */
+
+    private static List<ReportDataDTO> rollUp(final List<ReportDataDTO> dailyReportData, final Granularity granularity) {
+        final List<ReportDataDTO> rolledUpReportData = new ArrayList<>();
+        final RollUp rollUp = new RollUp(granularity, totals -> rolledUpReportData.add(totals.toReportDataDTO()));
+        dailyReportData.forEach(rollUp);
+        rollUp.finish();
+        return rolledUpReportData;
+    }
+
+    private static LocalDate bucketStart(final LocalDate date, final Granularity granularity) {
+        return granularity == Granularity.WEEKLY
+                ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                : date.withDayOfMonth(1);
+    }
+
+    private static LocalDate nextBucketStart(final LocalDate date, final Granularity granularity) {
+        return granularity == Granularity.WEEKLY
+                ? bucketStart(date, granularity).plusWeeks(1)
+                : bucketStart(date, granularity).plusMonths(1);
+    }
+
+    /**
+     * Merges the freshly computed rows for a user's pending update (if any, see "findPendingUpdate()") over the given
+     * stored rows, which must be in date order.  Only the part of the pending update's range within "windowStart" and
+     * "windowEnd" (either of which may be null) is computed, and nothing at all when the two don't intersect.
+     */
+
+    private List<ReportDataDTO> overlayPendingUpdate(
+            final User user,
+            final ReportDataUpdateEntry pendingUpdate,
+            final List<ReportDataDTO> storedReportData,
+            final Date windowStart,
+            final Date windowEnd
+    ) {
+        if (pendingUpdate == null) {
+            return storedReportData;
+        }
+        LocalDate firstDate = pendingUpdate.getStartDate().toLocalDate();
+        LocalDate lastDate = lastDateToUpdate(user, pendingUpdate.getEndDate());
+        if (windowStart != null && windowStart.toLocalDate().isAfter(firstDate)) {
+            firstDate = windowStart.toLocalDate();
+        }
+        if (windowEnd != null && windowEnd.toLocalDate().isBefore(lastDate)) {
+            lastDate = windowEnd.toLocalDate();
+        }
+        if (lastDate.isBefore(firstDate)) {
+            return storedReportData;
+        }
+
+        // Key everything by date, so that computed rows replace stored ones for the same date (keeping the stored id).
+        final NavigableMap<LocalDate, ReportDataDTO> reportDataByDate = new TreeMap<>();
+        for (final ReportDataDTO reportData : storedReportData) {
+            reportDataByDate.put(reportData.getDate().toLocalDate(), reportData);
+        }
+        for (final ReportDataDTO reportData : computeReportData(user, firstDate, lastDate)) {
+            final ReportDataDTO storedData = reportDataByDate.get(reportData.getDate().toLocalDate());
+            if (storedData != null) {
+                reportData.setId(storedData.getId());
+            }
+            reportDataByDate.put(reportData.getDate().toLocalDate(), reportData);
+        }
+        return new ArrayList<>(reportDataByDate.values());
+    }
+
+    /**
+     * Returns the date range of the user's pending update, or null if there isn't one.  In cluster mode the pending
+     * update is looked up in the outbox table (since it may have been scheduled on another node), and the returned
+     * entry holds only its date range.
+     */
+
+    private ReportDataUpdateEntry findPendingUpdate(final User user) {
+        if (clusterMode) {
+            final ReportDataUpdate pendingUpdate = reportDataUpdateRepository.findOne(user.getId());
+            return pendingUpdate == null
+                    ? null
+                    : new ReportDataUpdateEntry(pendingUpdate.getStartDate(), pendingUpdate.getEndDate(), null, null);
+        }
+        final ReportDataUpdateEntry pendingEntry = scheduledUserUpdates.get(user.getId());
+        return pendingEntry != null && !pendingEntry.getFuture().isDone() ? pendingEntry : null;
+    }
+
+    /**
+     * Update the ReportData records for a given user, starting on a given date and ending after today's date (in the
+     * most common use case, it will be a one-day range consisting of today anyway).
+     *
+     * See the overloaded version below for updating a bounded date range instead.
+     *
+     * I'm not happy about the fact that this method takes as a parameter a User object rather than a UserDTO, as
+     * all methods in the service tier should accept and return DTO's rather than actual entities.  However, there is
+     * a strange bug in which updates to a user's profile (from the UserService.createUser() and updateUser() methods).
+     *
+     * The transaction in either of those methods apparently does not commit prior to calling
+     * ReportDataService.updateUserFromDate()... and so when this method looks up the user in the database from the DTO,
+     * it sees outdated data.  This outdated data is then committed at the end of the ReportData update process,
+     * overwriting the original user update.
+     *
+     * I've tried taking the database save operation in UserService, and breaking it off into its own method annotated
+     * with @Transactional.  Although that seems to help when running locally, the problem still persists in production.
+     * So simply passing the User object directly (and avoiding the lookup-from-DTO) is an "impure" ploy to fix the
+     * problem until I'm able to focus on it again at some point.  At least this method is called only by other classes
+     * in the service tier, and not from anywhere in the controller tier that should never touch raw entities.
+     */
+
+    public final Future updateUserFromDate(
+            final User user,
+            final Date date
+    ) {
+        return updateUserFromDate(user, date, null);
+    }
+
+    /**
+     * Update the ReportData records for a given user, starting on a given date and stopping on the day prior to
+     * "endDate" (or on today's date, if "endDate" is null or later than today).  This is used when a change can only
+     * affect a bounded range of dates... such as an historical Weight edit, which only carries forward until the next
+     * Weight record.
+     *
+     * If an update is already pending for this user, and its date range covers the new one, then nothing new is
+     * scheduled.  Otherwise the pending update is cancelled, and replaced by one covering both ranges.
+     */
+
+    public final Future updateUserFromDate(
+            final User user,
+            final Date date,
+            final Date endDate
+    ) {
+        // The date is adjusted by the current time in the user's specific time zone.  For example, 2015-03-01 1:00 am
+        // on a GMT clock is actually 2015-02-28 8:00 pm if the user is in the "America/New_York" time zone.  So we
+        // must ensure that start from 02-28 rather than 03-01.
+        //
+        // Unfortunately, whenever the user is within that "date-straddling" window of time, this logic will push the
+        // date backwards by one day even when dealing with past historic dates rather than the current date.  We
+        // might be able to resolve that with even more logic, but I don't think it's that big of a deal for now.
+        // Most updates should normally be for the current date rather than a historical revision, so a little extra
+        // work in an edge case scenerio may be justified by keeping the logic more simple.
+        final Date adjustedDate = adjustDateForTimeZone(date, ZoneId.of(user.getTimeZone()));
+        updatesRequested.increment();
+        return scheduleUpdate(user, adjustedDate, endDate, scheduleDelayInMillis, true);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (nodeId == null || nodeId.isEmpty()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * The "reportdata.node-id" of this application node (or the random one it was given), which it uses as the owner
+     * of the leases and jobs it claims.
+     */
+
+    public final String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * When the user has no update scheduled yet and the pending budget is used up, writes the update only to the outbox
+     * (for "adoptOrphanedUpdates()" to pick up later), and returns true.
+     */
+
+    private boolean deferIfOverloaded(
+            final User user,
+            final Date startDate,
+            final Date endDate,
+            final long delayInMillis
+    ) {
+        if (scheduledUserUpdates.containsKey(user.getId()) || !isOverloaded()) {
+            return false;
+        }
+        persistPendingUpdate(user.getId(), startDate, endDate, new Timestamp(System.currentTimeMillis() + delayInMillis));
+        updatesDeferred.increment();
+        System.out.printf("Deferring a ReportData update for user [%s] from date [%s], with %d updates already pending%n", user.getEmail(), startDate, maxPendingUpdates);
+        return true;
+    }
+
+    /**
+     * Decides what to do with a new update request for a user, given the entry (if any) already in
+     * "scheduledUserUpdates" for that user.  Returns the future of a newly scheduled update, or null when the request was
+     * coalesced into the user's pending update (because that hasn't started yet and already covers the new date range),
+     * or was deferred (see "deferIfOverloaded()").
+     *
+     * An entry whose task has already started is never coalesced into, since that task may already have read the rows
+     * behind the new request.  It's left to finish, and the new update is scheduled to run after it.
+     *
+     * A new request spanning more than "largeUpdateDays" is demoted by "largeUpdateDelayInMillis".  Resumed updates
+     * ("isNewRequest" false) keep the due time they were persisted with, which already includes any such demotion.
+     *
+     * All of this runs under the user's scheduling lock, so that requests for the same user are decided one at a time,
+     * while the outbox write stays out of "scheduledUserUpdates.compute()" and never blocks other users sharing that
+     * map bin.  The scheduling lock is apart from the lock held by ReportData writes, so a request never waits behind
+     * a running ReportDataUpdateTask.  A newly scheduled update replaces the user's row in the outbox table before its
+     * task is queued, so that the row is always there for the task to delete once it's done.
+     */
+
+    private Future scheduleUpdate(
+            final User user,
+            final Date startDate,
+            final Date endDate,
+            final long delayInMillis,
+            final boolean isNewRequest
+    ) {
+        final UserLock lock = acquireSchedulingLock(user.getId());
+        try {
+            if (deferIfOverloaded(user, startDate, endDate, delayInMillis)) {
+                return null;
+            }
+            Date adjustedDate = startDate;
+            Date adjustedEndDate = endDate;
+            final ReportDataUpdateEntry existingEntry = scheduledUserUpdates.get(user.getId());
+            if (existingEntry != null && existingEntry.isStarted() && !existingEntry.getFuture().isDone()) {
+                // This user's update is already running, and may have read past the new change.  Let it finish, and
+                // schedule a fresh update to follow it.
+                updatesSuperseded.increment();
+            } else if (existingEntry != null && existingEntry.isPending()) {
+                if (existingEntry.covers(adjustedDate, adjustedEndDate)) {
+                    // There is an update still pending for this user, and it supersedes the new one here.  Do nothing,
+                    // and let the pending schedule stand.
+                    updatesCoalesced.increment();
+                    return null;
+                }
+                // There is an update still pending for this user, but its date range does not cover that of the new
+                // update.  Schedule a single update spanning both ranges instead, which cancels it below.
+                updatesSuperseded.increment();
+                if (existingEntry.getStartDate().before(adjustedDate)) {
+                    adjustedDate = existingEntry.getStartDate();
+                }
+                if (existingEntry.getEndDate() == null || (adjustedEndDate != null && existingEntry.getEndDate().after(adjustedEndDate))) {
+                    adjustedEndDate = existingEntry.getEndDate();
+                }
+            }
+
+            long adjustedDelayInMillis = delayInMillis;
+            if (isNewRequest && adjustedDate.toLocalDate().plusDays(largeUpdateDays).isBefore(lastDateToUpdate(user, adjustedEndDate))) {
+                adjustedDelayInMillis += largeUpdateDelayInMillis;
+                updatesDemoted.increment();
+            }
+
+            // Record the update in the outbox, where its range is also merged with whatever another node may have
+            // pending for this user.  Then schedule it, and it becomes the user's entry in the conflicts list.
+            final ReportDataUpdate pendingUpdate = persistPendingUpdate(
+                    user.getId(),
+                    adjustedDate,
+                    adjustedEndDate,
+                    new Timestamp(System.currentTimeMillis() + adjustedDelayInMillis)
+            );
+            final long scheduledDelayInMillis = adjustedDelayInMillis;
+            System.out.printf("Scheduling a ReportData update for user [%s] from date [%s] to [%s] in %d milliseconds%n", user.getEmail(), pendingUpdate.getStartDate(), pendingUpdate.getEndDate() == null ? "today" : pendingUpdate.getEndDate(), scheduledDelayInMillis);
+            final ReportDataUpdateTask task = new ReportDataUpdateTask(user, pendingUpdate.getStartDate(), pendingUpdate.getEndDate(), pendingUpdate.getUpdateId());
+            final ReportDataUpdateEntry entry = scheduledUserUpdates.compute(user.getId(), (userId, currentEntry) -> {
+                if (currentEntry != null && currentEntry.isPending() && currentEntry.getFuture().cancel(false)) {
+                    updatesCancelled.increment();
+                }
+                final Future future = reportDataUpdateThreadPool.schedule(task, scheduledDelayInMillis, TimeUnit.MILLISECONDS);
+                return new ReportDataUpdateEntry(pendingUpdate.getStartDate(), pendingUpdate.getEndDate(), task, future);
+            });
+            updatesScheduled.increment();
+            return entry.getFuture();
+        } finally {
+            releaseSchedulingLock(user.getId(), lock);
+        }
+    }
+
+    /**
+     * Writes a user's pending update to the outbox under a new "updateId", merging its date range with that of any row
+     * already there, and returns what was written.  Both the insert and the rewrite fail rather than overwrite, when
+     * another node has changed the row in the meantime, in which case this tries again against the newer row, up to
+     * "MAX_OUTBOX_ATTEMPTS" times in all.  This runs under the user's scheduling lock, so on this node only another
+     * node's writes can get in the way.
+     */
+
+    private ReportDataUpdate persistPendingUpdate(
+            final UUID userId,
+            final Date startDate,
+            final Date endDate,
+            final Timestamp dueTime
+    ) {
+        for (int attempt = 0; attempt < MAX_OUTBOX_ATTEMPTS; attempt++) {
+            final UUID updateId = UUID.randomUUID();
+            final ReportDataUpdate existingUpdate = reportDataUpdateRepository.findOne(userId);
+            if (existingUpdate == null) {
+                try {
+                    jdbcTemplate.update(INSERT_REPORT_DATA_UPDATE_SQL, uuidToBytes(userId), uuidToBytes(updateId), startDate, endDate, dueTime);
+                    return new ReportDataUpdate(userId, updateId, startDate, endDate, dueTime);
+                } catch (DuplicateKeyException e) {
+                    continue;
+                }
+            }
+            final Date mergedStartDate = existingUpdate.getStartDate().before(startDate) ? existingUpdate.getStartDate() : startDate;
+            final Date mergedEndDate = existingUpdate.getEndDate() == null || endDate == null
+                    ? null
+                    : existingUpdate.getEndDate().after(endDate) ? existingUpdate.getEndDate() : endDate;
+            if (reportDataUpdateRepository.rewrite(userId, existingUpdate.getUpdateId(), updateId, mergedStartDate, mergedEndDate, dueTime) == 1) {
+                return new ReportDataUpdate(userId, updateId, mergedStartDate, mergedEndDate, dueTime);
+            }
+        }
+        throw new OptimisticLockingFailureException(
+                String.format("Gave up writing a ReportData update for user [%s] after %d attempts", userId, MAX_OUTBOX_ATTEMPTS)
+        );
+    }
+
+    /**
+     * Once the application has started, re-schedules any updates left pending in the "report_data_update" outbox table
+     * by a previous run (e.g. one that was shut down or crashed within the update delay).  The outbox is drained on the
+     * worker pool, a batch of rows at a time, so startup doesn't wait on it.  Updates that were already overdue run right
+     * away, and the rest keep their original due time.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingUpdates() {
+        reportDataUpdateThreadPool.execute(() -> {
+            try {
+                List<ReportDataUpdate> batch = reportDataUpdateRepository.findAllByOrderByUserIdAsc(new PageRequest(0, outboxBatchSize));
+                // Whatever doesn't fit in the pending budget is left in the outbox, for "adoptOrphanedUpdates()" to pick up.
+                while (!batch.isEmpty() && !isOverloaded()) {
+                    resumePendingUpdates(batch);
+                    if (batch.size() < outboxBatchSize) {
+                        break;
+                    }
+                    final UUID lastUserId = batch.get(batch.size() - 1).getUserId();
+                    batch = reportDataUpdateRepository.findByUserIdGreaterThanOrderByUserIdAsc(lastUserId, new PageRequest(0, outboxBatchSize));
+                }
+            } catch (Exception e) {
+                System.out.println("Exception thrown while resuming pending ReportData updates");
+                e.printStackTrace();
+            }
+        });
+        reportDataUpdateThreadPool.scheduleWithFixedDelay(this::adoptOrphanedUpdates, leasePollInMillis, leasePollInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules on this node any pending updates which are overdue by more than the lease poll interval and unleased, as
+     * far as the pending budget allows.  That covers updates deferred while the budget was used up, and in cluster mode
+     * also updates scheduled on a node which has since gone down, as well as updates which lost a lease conflict to
+     * another node's (now finished) run.  If two nodes adopt the same update, then whichever rewrites the outbox row
+     * last wins, and the other's task finds its "updateId" gone and does nothing.
+     */
+
+    private void adoptOrphanedUpdates() {
+        try {
+            final int availableBudget = Math.min(outboxBatchSize, maxPendingUpdates - scheduledUserUpdates.size());
+            if (availableBudget <= 0) {
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            final List<ReportDataUpdate> orphanedUpdates = reportDataUpdateRepository.findOrphaned(
+                    new Timestamp(now - leasePollInMillis),
+                    new Timestamp(now),
+                    new PageRequest(0, availableBudget)
+            );
+            if (!orphanedUpdates.isEmpty()) {
+                System.out.printf("Node [%s] adopting %d orphaned ReportData updates%n", nodeId, orphanedUpdates.size());
+                resumePendingUpdates(orphanedUpdates);
+            }
+        } catch (Exception e) {
+            System.out.println("Exception thrown while adopting orphaned ReportData updates");
+            e.printStackTrace();
+        }
+    }
+
+    private void resumePendingUpdates(final List<ReportDataUpdate> pendingUpdates) {
+        final Map<UUID, User> usersById = new HashMap<>();
+        for (final User user : userRepository.findAll(pendingUpdates.stream().map(ReportDataUpdate::getUserId).collect(toList()))) {
+            usersById.put(user.getId(), user);
+        }
+        for (final ReportDataUpdate pendingUpdate : pendingUpdates) {
+            final User user = usersById.get(pendingUpdate.getUserId());
+            if (user == null) {
+                // The user has been deleted since, so there's nothing left to update.
+                reportDataUpdateRepository.deleteByUserIdAndUpdateId(pendingUpdate.getUserId(), pendingUpdate.getUpdateId());
+                continue;
+            }
+            final long delayInMillis = Math.max(0, pendingUpdate.getDueTime().getTime() - System.currentTimeMillis());
+            scheduleUpdate(user, pendingUpdate.getStartDate(), pendingUpdate.getEndDate(), delayInMillis, false);
+        }
+    }
+
+    /**
+     * Synchronously recomputes the ReportData rows across a user's entire history, from their first recorded Weight
+     * through today, and returns the number of rows written.  This is used by the fleet-wide rebuild job (see
+     * ReportDataRebuildService) after a change to how calories or points are calculated, rather than scheduling an
+     * update for every user.
+     *
+     * In cluster mode the rebuild is first written to the outbox as a whole-history update, and this node claims the
+     * lease on it, just as a ReportDataUpdateTask would... so that no other node's task recomputes the user meanwhile.
+     * If another node holds a live lease on the user already, then nothing is written here, and the outbox row is left
+     * for the update pipeline to adopt once that lease is gone.
+     */
+
+    public final int rebuildUser(final User user) {
+        final Weight firstWeight = weightRepository.findFirstByUserOrderByDateAsc(user);
+        if (firstWeight == null) {
+            return 0;
+        }
+        final UUID updateId = clusterMode ? claimRebuildLease(user, firstWeight.getDate()) : null;
+        if (clusterMode && updateId == null) {
+            System.out.printf("Node [%s] left the ReportData rebuild for user [%s] to the update pipeline, as another node holds its lease%n", nodeId, user.getEmail());
+            return 0;
+        }
+        final int rowsWritten;
+        final UserLock lock = acquireUserLock(user.getId());
+        try {
+            rowsWritten = writeReportData(user, firstWeight.getDate(), null);
+        } finally {
+            releaseUserLock(user.getId(), lock);
+        }
+        if (updateId != null && reportDataUpdateRepository.deleteByUserIdAndUpdateId(user.getId(), updateId) == 0) {
+            reportDataUpdateRepository.releaseLease(user.getId(), nodeId);
+        }
+        return rowsWritten;
+    }
+
+    /**
+     * Writes a whole-history update for the user to the outbox (due right away), and claims the lease on it for this
+     * node.  Returns its "updateId", or null if another node holds a live lease on the user's row.
+     */
+
+    private UUID claimRebuildLease(final User user, final Date startDate) {
+        final ReportDataUpdate pendingUpdate;
+        final UserLock lock = acquireSchedulingLock(user.getId());
+        try {
+            pendingUpdate = persistPendingUpdate(user.getId(), startDate, null, new Timestamp(System.currentTimeMillis()));
+        } finally {
+            releaseSchedulingLock(user.getId(), lock);
+        }
+        final long now = System.currentTimeMillis();
+        final boolean claimed = reportDataUpdateRepository.claimLease(
+                user.getId(),
+                pendingUpdate.getUpdateId(),
+                nodeId,
+                new Timestamp(now),
+                new Timestamp(now + leaseDurationInMillis)
+        ) == 1;
+        return claimed ? pendingUpdate.getUpdateId() : null;
+    }
+
+    /**
+     * Applies a net calories and net points delta directly to the existing ReportData row for a single date, rather
+     * than scheduling a rebuild of every date from there through today.  This is used when a FoodEaten or
+     * ExercisePerformed record is added, updated or deleted, because those only affect the totals for their own date.
+     *
+     * Falls back to a regular scheduled update when there's no ReportData row yet for that date, or when an update
+     * which covers that date is waiting to start for this user (in which case the pending rebuild will pick up the
+     * change anyway, and applying the delta on top of it could count the change twice).  It also falls back when the
+     * user's ReportData is being written right now, e.g. by a long ReportDataUpdateTask or "rebuildUser()", since this
+     * runs on the request thread and mustn't wait behind that.
+     *
+     * In cluster mode the delta is never applied directly, since the user's lock only keeps out writes on this node,
+     * and another node's task may be rewriting the same rows.  Instead a one-day update for that date is scheduled,
+     * which goes through the outbox lease like any other.
+     *
+     * The same delta is applied to the week and month rollup rows containing that date, in the same transaction.
+     */
+
+    public final void applyDelta(
+            final User user,
+            final Date date,
+            final int netCaloriesDelta,
+            final double netPointsDelta
+    ) {
+        if (netCaloriesDelta == 0 && netPointsDelta == 0.0) {
+            return;
+        }
+        if (clusterMode) {
+            updateUserFromDate(user, date, new Date(date.getTime() + TimeUnit.DAYS.toMillis(1)));
+            return;
+        }
+        // Holding the user's lock keeps the delta from landing in the middle of a running ReportDataUpdateTask for the
+        // same user, which could otherwise overwrite it with totals read before the change.
+        final UserLock lock = tryAcquireUserLock(user.getId());
+        boolean needsRebuild = true;
+        if (lock != null) {
+            try {
+                final ReportDataUpdateEntry existingEntry = scheduledUserUpdates.get(user.getId());
+                final boolean pendingUpdateCoversDate = existingEntry != null
+                        && existingEntry.isPending()
+                        && existingEntry.covers(date, new Date(date.getTime() + TimeUnit.DAYS.toMillis(1)));
+                // The daily row and its rollups change in one transaction, so that a failure in between can't leave the
+                // rollups out of step with the daily rows until the next full update.
+                needsRebuild = pendingUpdateCoversDate || transactionTemplate.execute(status -> {
+                    if (reportDataRepository.applyDelta(user, date, netCaloriesDelta, netPointsDelta) == 0) {
+                        return true;
+                    }
+                    applyRollUpDelta(user, date, netCaloriesDelta, netPointsDelta);
+                    return false;
+                });
+            } finally {
+                releaseUserLock(user.getId(), lock);
+            }
+        }
+        if (needsRebuild) {
+            updateUserFromDate(user, date);
+        }
+    }
+
+    /**
+     * Adds the given deltas to the week and month rollup rows containing "date".  A missing rollup row (e.g. for data
+     * written before the rollup tables existed) is recomputed from the daily rows, which already include the delta.
+     * Callers must hold the user's lock.
+     */
+
+    private void applyRollUpDelta(
+            final User user,
+            final Date date,
+            final int netCaloriesDelta,
+            final double netPointsDelta
+    ) {
+        for (final Granularity granularity : new Granularity[] {Granularity.WEEKLY, Granularity.MONTHLY}) {
+            final int rowsUpdated = jdbcTemplate.update(
+                    String.format(APPLY_ROLL_UP_DELTA_SQL, granularity.rollUpTable),
+                    netCaloriesDelta,
+                    netPointsDelta,
+                    uuidToBytes(user.getId()),
+                    Date.valueOf(bucketStart(date.toLocalDate(), granularity))
+            );
+            if (rowsUpdated == 0) {
+                writeRollUps(user, date.toLocalDate(), date.toLocalDate(), granularity);
+            }
+        }
+    }
+
+    /**
+     * Applies the delta for an ExercisePerformed record whose duration changed from "previousMinutes" to "minutes"
+     * (use zero for "previousMinutes" when the exercise was just added, and zero for "minutes" when it was deleted).
+     * The calories and points burned depend upon the user's weight on that date, so that is looked up here the same
+     * way that ReportDataUpdateTask does.
+     */
+
+    public final void applyExerciseDelta(
+            final User user,
+            final Date date,
+            final double metabolicEquivalent,
+            final int previousMinutes,
+            final int minutes
+    ) {
+        final Weight mostRecentWeight = weightRepository.findByUserMostRecentOnDate(user, date);
+        if (mostRecentWeight == null) {
+            updateUserFromDate(user, date);
+            return;
+        }
+        final int caloriesBurnedDelta =
+                ExerciseService.calculateCaloriesBurned(metabolicEquivalent, minutes, mostRecentWeight.getPounds())
+                - ExerciseService.calculateCaloriesBurned(metabolicEquivalent, previousMinutes, mostRecentWeight.getPounds());
+        final double pointsBurnedDelta =
+                ExerciseService.calculatePointsBurned(metabolicEquivalent, minutes, mostRecentWeight.getPounds())
+                - ExerciseService.calculatePointsBurned(metabolicEquivalent, previousMinutes, mostRecentWeight.getPounds());
+        applyDelta(user, date, -caloriesBurnedDelta, -pointsBurnedDelta);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reportDataUpdateThreadPool.shutdownNow();
+    }
+
+    /**
+     * Whether the pending budget is used up, so that further updates for users with nothing pending are being deferred.
+     * Callers able to push back on their own clients (see ReportDataBackpressureInterceptor) should do so meanwhile.
+     */
+
+    public final boolean isOverloaded() {
+        return scheduledUserUpdates.size() >= maxPendingUpdates;
+    }
+
+    /**
+     * Whether the given user has an update scheduled on this node which hasn't finished yet.  A further update for such
+     * a user takes no more of the pending budget, since it either merges into that one or replaces it.
+     */
+
+    public final boolean hasPendingUpdate(final UUID userId) {
+        final ReportDataUpdateEntry entry = scheduledUserUpdates.get(userId);
+        return entry != null && !entry.getFuture().isDone();
+    }
+
+    /**
+     * A snapshot of the update pipeline's metrics:  the current backlog, how many requests were coalesced or superseded,
+     * and the duration, days recomputed and JDBC statements of each finished ReportDataUpdateTask.
+     */
+
+    public final ReportDataMetricsDTO getMetrics() {
+        return new ReportDataMetricsDTO(
+                scheduledUserUpdates.size(),
+                reportDataUpdateThreadPool.getQueue().size(),
+                reportDataUpdateThreadPool.getActiveCount(),
+                updatesRequested.sum(),
+                updatesScheduled.sum(),
+                updatesCoalesced.sum(),
+                updatesSuperseded.sum(),
+                updatesCancelled.sum(),
+                updatesDeferred.sum(),
+                updatesDemoted.sum(),
+                tasksCompleted.sum(),
+                tasksFailed.sum(),
+                taskDurationMillis.snapshot(),
+                daysRecomputed.snapshot(),
+                statementsPerTask.snapshot()
+        );
+    }
+
+    public final boolean isIdle() {
+        System.out.printf("%d active threads, %d queued tasks%n", reportDataUpdateThreadPool.getActiveCount(), scheduledUserUpdates.size());
+        return reportDataUpdateThreadPool.getActiveCount() == 0 && scheduledUserUpdates.isEmpty();
+    }
+
+    /**
+     * When the input date is "today", then this method returns the current date in the given time zone (e.g. the input
+     * date might be early in the morning of 2015-03-01 in standard GMT, yet still late in the evening of 2015-02-28 in
+     * New York).  This method does not modify historic dates earlier than today, because the current time of day today
+     * shouldn't cause historic dates to change.
+     */
+
+    public final Date adjustDateForTimeZone(final Date date, final ZoneId timeZone) {
+        final LocalDateTime localDate = LocalDateTime.ofInstant(Instant.ofEpochMilli(date.getTime()), ZoneId.systemDefault());
+        final LocalDateTime today = LocalDateTime.now();
+        Date adjustedDate = (Date) date.clone();
+        if (localDate.getDayOfYear() == today.getDayOfYear()) {
+            final ZonedDateTime zonedDateTime = ZonedDateTime.now(timeZone);
+            adjustedDate = new Date(zonedDateTime.toLocalDate().atStartOfDay(timeZone).toInstant().toEpochMilli());
+        }
+        return adjustedDate;
+    }
+
+    /**
+     * The last date (inclusive) which an update for the given user should cover:  the day prior to "endDate", or today's
+     * date in the user's time zone if "endDate" is null or later than today.
+     */
+
+    private LocalDate lastDateToUpdate(final User user, final Date endDate) {
+        final Date today = adjustDateForTimeZone(new Date(new java.util.Date().getTime()), ZoneId.of(user.getTimeZone()));
+        LocalDate lastDate = today.toLocalDate();
+        if (endDate != null && !endDate.toLocalDate().isAfter(lastDate)) {
+            lastDate = endDate.toLocalDate().minusDays(1);
+        }
+        return lastDate;
+    }
+
+    /**
+     * Computes what the ReportData rows for a user should be, for every date in the given range (inclusive) on which
+     * the user had a weight recorded, without writing anything.  The returned DTO's have no id.  This is the number-
+     * crunching half of ReportDataUpdateTask, and is also used by "findByUser()" to overlay a pending update's range.
+     */
+
+    private List<ReportDataDTO> computeReportData(
+            final User user,
+            final LocalDate firstDate,
+            final LocalDate lastDate
+    ) {
+        final Date rangeStart = Date.valueOf(firstDate);
+        final Date rangeEnd = Date.valueOf(lastDate);
+
+        // Load the weights in effect across the whole date range:  the most recent one on or before the start date,
+        // plus every one recorded within the range.  Each date then uses the latest weight on or before it.
+        final NavigableMap<LocalDate, Double> weightsByDate = new TreeMap<>();
+        final Weight initialWeight = weightRepository.findByUserMostRecentOnDate(user, rangeStart);
+        if (initialWeight != null) {
+            weightsByDate.put(initialWeight.getDate().toLocalDate(), initialWeight.getPounds());
+        }
+        for (final Weight weight : weightRepository.findByUserAndDateBetweenOrderByDateAsc(user, rangeStart, rangeEnd)) {
+            weightsByDate.put(weight.getDate().toLocalDate(), weight.getPounds());
+        }
+
+        // Total up the net calories and net points for every date in the range, from all foods eaten...
+        final Map<LocalDate, Integer> netCaloriesByDate = new HashMap<>();
+        final Map<LocalDate, Double> netPointsByDate = new HashMap<>();
+        for (final FoodEaten foodEaten : foodEatenRepository.findByUserEatenBetween(user, rangeStart, rangeEnd)) {
+            final LocalDate date = foodEaten.getDate().toLocalDate();
+            netCaloriesByDate.merge(date, foodEaten.getCalories(), Integer::sum);
+            netPointsByDate.merge(date, foodEaten.getPoints(), Double::sum);
+        }
+
+        // ... and from all exercises performed.
+        for (final ExercisePerformed exercisePerformed : exercisePerformedRepository.findByUserPerformedBetween(user, rangeStart, rangeEnd)) {
+            final LocalDate date = exercisePerformed.getDate().toLocalDate();
+            final Map.Entry<LocalDate, Double> weight = weightsByDate.floorEntry(date);
+            if (weight == null) {
+                continue;
+            }
+            netCaloriesByDate.merge(date, -ExerciseService.calculateCaloriesBurned(
+                    exercisePerformed.getExercise().getMetabolicEquivalent(),
+                    exercisePerformed.getMinutes(),
+                    weight.getValue()
+            ), Integer::sum);
+            netPointsByDate.merge(date, -ExerciseService.calculatePointsBurned(
+                    exercisePerformed.getExercise().getMetabolicEquivalent(),
+                    exercisePerformed.getMinutes(),
+                    weight.getValue()
+            ), Double::sum);
+        }
+
+        final List<ReportDataDTO> reportData = new ArrayList<>();
+        for (LocalDate currentDate = firstDate; !currentDate.isAfter(lastDate); currentDate = currentDate.plusDays(1)) {
+            final Map.Entry<LocalDate, Double> weight = weightsByDate.floorEntry(currentDate);
+            if (weight == null) {
+                // No weight has been recorded yet as of this date, so there is nothing to report.
+                continue;
+            }
+            reportData.add(new ReportDataDTO(
+                    null,
+                    user.getId(),
+                    Date.valueOf(currentDate),
+                    weight.getValue(),
+                    netCaloriesByDate.getOrDefault(currentDate, 0),
+                    netPointsByDate.getOrDefault(currentDate, 0.0)
+            ));
+        }
+        return reportData;
+    }
+
+    /**
+     * Creates or updates the ReportData rows for a user from "startDate" through the day prior to "endDate" (or through
+     * today, see "lastDateToUpdate()"), and returns the number of rows written.  The week and month rollup rows
+     * overlapping that range are then rewritten too.  Callers must hold the user's lock.
+     */
+
+    private int writeReportData(
+            final User user,
+            final Date startDate,
+            final Date endDate
+    ) {
+        final LocalDate firstDate = startDate.toLocalDate();
+        final LocalDate lastDate = lastDateToUpdate(user, endDate);
+        if (lastDate.isBefore(firstDate)) {
+            return 0;
+        }
+        final Date rangeStart = Date.valueOf(firstDate);
+        final Date rangeEnd = Date.valueOf(lastDate);
+        System.out.printf("Creating or updating ReportData records for user [%s] from date [%s] through [%s]%n", user.getEmail(), firstDate, lastDate);
+        final List<ReportDataDTO> computedReportData = computeReportData(user, firstDate, lastDate);
+
+        // Find which dates already have a ReportData row, so they can be updated rather than inserted.
+        final Map<LocalDate, UUID> existingIdsByDate = new HashMap<>();
+        for (final ReportData reportData : reportDataRepository.findByUserAndDateBetweenOrderByDateAsc(user, rangeStart, rangeEnd)) {
+            existingIdsByDate.put(reportData.getDate().toLocalDate(), reportData.getId());
+        }
+
+        // Split the computed rows into updates and inserts, and write them all out as two JDBC batches.
+        final List<Object[]> updates = new ArrayList<>();
+        final List<Object[]> inserts = new ArrayList<>();
+        for (final ReportDataDTO reportData : computedReportData) {
+            final UUID existingId = existingIdsByDate.get(reportData.getDate().toLocalDate());
+            if (existingId == null) {
+                inserts.add(new Object[] {
+                        uuidToBytes(UUID.randomUUID()), uuidToBytes(user.getId()), reportData.getDate(), reportData.getPounds(), reportData.getNetCalories(), reportData.getNetPoints()
+                });
+            } else {
+                updates.add(new Object[] { reportData.getPounds(), reportData.getNetCalories(), reportData.getNetPoints(), uuidToBytes(existingId) });
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_REPORT_DATA_SQL, updates);
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_REPORT_DATA_SQL, inserts);
+        }
+        writeRollUps(user, firstDate, lastDate, Granularity.WEEKLY);
+        writeRollUps(user, firstDate, lastDate, Granularity.MONTHLY);
+
+        user.setLastUpdatedTime(new Timestamp(System.currentTimeMillis()));
+        userRepository.save(user);
+
+        System.out.printf("ReportData update complete for user [%s] from date [%s] through [%s] (%d inserted, %d updated)%n", user.getEmail(), firstDate, lastDate, inserts.size(), updates.size());
+        return inserts.size() + updates.size();
+    }
+
+    /**
+     * Rewrites a user's rollup rows for every week (or month) overlapping "firstDate" through "lastDate", from the
+     * daily ReportData rows already stored for those whole weeks (or months).  The old rows are deleted and the new ones
+     * inserted in a single transaction, so that readers never see a bucket go missing.  Callers must hold the user's
+     * lock.
+     */
+
+    private void writeRollUps(
+            final User user,
+            final LocalDate firstDate,
+            final LocalDate lastDate,
+            final Granularity granularity
+    ) {
+        final Date bucketsStart = Date.valueOf(bucketStart(firstDate, granularity));
+        final Date bucketsEnd = Date.valueOf(nextBucketStart(lastDate, granularity));
+        transactionTemplate.execute(status -> {
+            final List<Object[]> inserts = new ArrayList<>();
+            final RollUp rollUp = new RollUp(granularity, totals -> inserts.add(new Object[] {
+                    uuidToBytes(user.getId()), Date.valueOf(totals.getBucketStart()), totals.getAveragePounds(), totals.getTotalNetCalories(), totals.getTotalNetPoints(), totals.getDays()
+            }));
+            for (final ReportData reportData : reportDataRepository.findByUserAndDateBetweenOrderByDateAsc(
+                    user,
+                    bucketsStart,
+                    Date.valueOf(bucketsEnd.toLocalDate().minusDays(1))
+            )) {
+                rollUp.accept(reportDataDTOConverter.convert(reportData));
+            }
+            rollUp.finish();
+            jdbcTemplate.update(String.format(DELETE_ROLL_UP_SQL, granularity.rollUpTable), uuidToBytes(user.getId()), bucketsStart, bucketsEnd);
+            if (!inserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(String.format(INSERT_ROLL_UP_SQL, granularity.rollUpTable), inserts);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Takes the lock shared by all ReportData writes for the given user, waiting for it if need be.  The returned lock
+     * must be handed back to "releaseUserLock()".
+     */
+
+    private UserLock acquireUserLock(final UUID userId) {
+        final UserLock lock = referenceUserLock(userId);
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Takes the lock shared by all ReportData writes for the given user if it's free right now, or else returns null.
+     */
+
+    private UserLock tryAcquireUserLock(final UUID userId) {
+        final UserLock lock = referenceUserLock(userId);
+        if (lock.tryLock()) {
+            return lock;
+        }
+        dereferenceUserLock(userId);
+        return null;
+    }
+
+    private void releaseUserLock(
+            final UUID userId,
+            final UserLock lock
+    ) {
+        lock.unlock();
+        dereferenceUserLock(userId);
+    }
+
+    /**
+     * Takes the given user's scheduling lock (see "scheduleUpdate()"), waiting for it if need be.  The returned lock
+     * must be handed back to "releaseSchedulingLock()".
+     */
+
+    private UserLock acquireSchedulingLock(final UUID userId) {
+        final UserLock lock = referenceUserLock(userId);
+        lock.schedulingLock.lock();
+        return lock;
+    }
+
+    private void releaseSchedulingLock(
+            final UUID userId,
+            final UserLock lock
+    ) {
+        lock.schedulingLock.unlock();
+        dereferenceUserLock(userId);
+    }
+
+    private UserLock referenceUserLock(final UUID userId) {
+        return userLocks.compute(userId, (id, existing) -> {
+            final UserLock lock = existing == null ? new UserLock() : existing;
+            lock.references++;
+            return lock;
+        });
+    }
+
+    private void dereferenceUserLock(final UUID userId) {
+        userLocks.computeIfPresent(userId, (id, existing) -> --existing.references == 0 ? null : existing);
+    }
+
+    /**
+     * Converts a UUID into the same 16-byte representation that Hibernate uses for the "BINARY(16)" id columns.
+     */
+
+    private static byte[] uuidToBytes(final UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    /**
+     * Accumulates daily rows (which must arrive in date order) into weekly or monthly buckets, passing each bucket's
+     * totals on to "downstream" once a row from the next bucket arrives, or once "finish()" is called after the last row.
+     */
+    static class RollUp implements Consumer<ReportDataDTO> {
+
+        private final Granularity granularity;
+        private final Consumer<RollUpTotals> downstream;
+        private LocalDate bucketStart;
+        private UUID userId;
+        private double totalPounds;
+        private long totalNetCalories;
+        private double totalNetPoints;
+        private int days;
+
+        public RollUp(final Granularity granularity, final Consumer<RollUpTotals> downstream) {
+            this.granularity = granularity;
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void accept(final ReportDataDTO reportData) {
+            final LocalDate reportDataBucketStart = bucketStart(reportData.getDate().toLocalDate(), granularity);
+            if (!reportDataBucketStart.equals(bucketStart)) {
+                finish();
+                bucketStart = reportDataBucketStart;
+                userId = reportData.getUserId();
+            }
+            totalPounds += reportData.getPounds();
+            totalNetCalories += reportData.getNetCalories();
+            totalNetPoints += reportData.getNetPoints();
+            days++;
+        }
+
+        public void finish() {
+            if (days > 0) {
+                downstream.accept(new RollUpTotals(userId, bucketStart, totalPounds / days, totalNetCalories, totalNetPoints, days));
+            }
+            totalPounds = 0.0;
+            totalNetCalories = 0;
+            totalNetPoints = 0.0;
+            days = 0;
+        }
+    }
+
+    /**
+     * The totals for one week or month of a user's ReportData, as stored in the rollup tables.
+     */
+    static class RollUpTotals {
+
+        private final UUID userId;
+        private final LocalDate bucketStart;
+        private final double averagePounds;
+        private final long totalNetCalories;
+        private final double totalNetPoints;
+        private final int days;
+
+        public RollUpTotals(
+                final UUID userId,
+                final LocalDate bucketStart,
+                final double averagePounds,
+                final long totalNetCalories,
+                final double totalNetPoints,
+                final int days
+        ) {
+            this.userId = userId;
+            this.bucketStart = bucketStart;
+            this.averagePounds = averagePounds;
+            this.totalNetCalories = totalNetCalories;
+            this.totalNetPoints = totalNetPoints;
+            this.days = days;
+        }
+
+
+        public final LocalDate getBucketStart() {
+            return bucketStart;
+        }
+
+
+        public final double getAveragePounds() {
+            return averagePounds;
+        }
+
+
+        public final long getTotalNetCalories() {
+            return totalNetCalories;
+        }
+
+
+        public final double getTotalNetPoints() {
+            return totalNetPoints;
+        }
+
+
+        public final int getDays() {
+            return days;
+        }
+
+        /** The rolled-up row returned by "findByUser()", with the averages per logged day (see there). */
+        public final ReportDataDTO toReportDataDTO() {
+            return new ReportDataDTO(
+                    null,
+                    userId,
+                    Date.valueOf(bucketStart),
+                    averagePounds,
+                    (int) Math.round((double) totalNetCalories / days),
+                    totalNetPoints / days
+            );
+        }
+    }
+
+    /**
+     * A container holding the date range and Future reference for a scheduled user update task.  Used to detect
+     * whether or not subsequent tasks supersede those previously scheduled for a user, and to cancel them if so.
+     */
+    static class ReportDataUpdateEntry {
+
+        private final Date startDate;
+        private final Date endDate;
+        private final ReportDataUpdateTask task;
+        private final Future future;
+
+        public ReportDataUpdateEntry(final Date startDate, final Date endDate, final ReportDataUpdateTask task, final Future future) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.task = task;
+            this.future = future;
+        }
+
+
+        public final Date getStartDate() {
+            return startDate;
+        }
+
+        /** Exclusive, or null when the update runs through today. */
+        public final Date getEndDate() {
+            return endDate;
+        }
+
+        /** Whether this entry's date range includes all of the given range (a null end date meaning "through today"). */
+        public final boolean covers(final Date otherStartDate, final Date otherEndDate) {
+            final boolean coversStart = !startDate.after(otherStartDate);
+            final boolean coversEnd = endDate == null || (otherEndDate != null && !endDate.before(otherEndDate));
+            return coversStart && coversEnd;
+        }
+
+
+        public final ReportDataUpdateTask getTask() {
+            return task;
+        }
+
+
+        public final Future getFuture() {
+            return future;
+        }
+
+        /** Whether the task has begun running, and so may already have read the rows it recomputes. */
+        public final boolean isStarted() {
+            return task != null && task.isStarted();
+        }
+
+        /** Whether the task is still waiting to run, so that anything it covers will be picked up when it does. */
+        public final boolean isPending() {
+            return !future.isDone() && !isStarted();
+        }
+    }
+
+    /**
+     * An entry in "userLocks", counting the threads holding or waiting on it.  The count is only changed inside the
+     * map's "compute()" calls for the user, so that an entry is removed exactly when the last of them lets go, and a
+     * thread arriving meanwhile always finds the same lock as the others.
+     *
+     * The lock itself is held by ReportData writes.  Its "schedulingLock" is held only briefly, while an update request
+     * for the user is decided and written to the outbox, and shares the same count.
+     */
+    static class UserLock extends ReentrantLock {
+
+        private final ReentrantLock schedulingLock = new ReentrantLock();
+        private int references;
+
+    }
+
+    /**
+     * A task that can be scheduled in a background thread, to create or update rows in the ReportData table for a
+     * given user, starting from a given date and stopping on the present day.
+     *
+     * In the future this process could be further optimized, to support:
+     *
+     * [1] Updating records only between a specific date range (e.g. when the user updates an historical Weight record,
+     *     only update ReportData from the date of that record to the date of the next known Weight record).  This is
+     *     now supported through the optional "endDate".
+     * [2] Updating records only on a specific single date (e.g. when the user updates the nutritional information for
+     *     a custom food, update that user's ReportData rows only for the dates on which that food had been eaten).
+     *
+     * (Changes to individual FoodEaten and ExercisePerformed records no longer come through here at all, see
+     * "applyDelta()" above.)  The number-crunching itself lives in "computeReportData()", which "findByUser()" also uses to show
+     * a pending update's range before this task has written it.
+     *
+     * However, it's expected that by a wide margin the typical use case will only call this task for today's date.
+     * The next most common use case would be where the user has gone some number of days without logging in at all,
+     * and so it would be a date range ending on today anyway.  Users making edits to older historical records on
+     * arbitrary dates should be an edge case, and probably isn't worth adding further complexity to this design.  A
+     * main benefit of this design is that it makes it easier to filter out and discard multiple redundant update
+     * requests that come through in a short period of time.  Any re-design would need to account for and provide the
+     * same benefit.
+     */
+    class ReportDataUpdateTask implements Runnable {
+
+        private final User user;
+        private final Date startDate;
+        private final Date endDate;
+        private final UUID updateId;
+        private volatile boolean started;
+
+        public ReportDataUpdateTask(
+                final User user,
+                final Date startDate,
+                final Date endDate,
+                final UUID updateId
+        ) {
+            this.user = user;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.updateId = updateId;
+        }
+
+        public boolean isStarted() {
+            return started;
+        }
+
+        @Override
+        public void run() {
+            // Set before anything is read, so that a change made before a request sees this still unset is never missed.
+            started = true;
+            final long startTime = System.currentTimeMillis();
+            StatementCountingDataSource.start();
+            boolean leased = false;
+            boolean succeeded = false;
+            int rowsWritten = 0;
+            try {
+                if (clusterMode && !claimLease()) {
+                    return;
+                }
+                leased = true;
+                final UserLock lock = acquireUserLock(user.getId());
+                try {
+                    rowsWritten = writeReportData(user, startDate, endDate);
+                } finally {
+                    releaseUserLock(user.getId(), lock);
+                }
+                // The work is done, so clear it from the outbox.  If the update failed instead, then the row is left in
+                // place and the update is retried on the next restart.  If another node rewrote the row while this was
+                // running, then the row stays for that newer update, and this node's lease on it is released.
+                if (reportDataUpdateRepository.deleteByUserIdAndUpdateId(user.getId(), updateId) == 0 && clusterMode) {
+                    reportDataUpdateRepository.releaseLease(user.getId(), nodeId);
+                }
+                succeeded = true;
+            } finally {
+                final int statements = StatementCountingDataSource.stop();
+                if (succeeded) {
+                    tasksCompleted.increment();
+                    taskDurationMillis.record(System.currentTimeMillis() - startTime);
+                    daysRecomputed.record(rowsWritten);
+                    statementsPerTask.record(statements);
+                } else if (leased) {
+                    tasksFailed.increment();
+                }
+                // Remove this task's entry now that it's finished, unless it has already been replaced by a newer one.  If
+                // the task started before "scheduleUpdate()" had even stored its entry, then this waits on the same
+                // map bin until it has.
+                scheduledUserUpdates.computeIfPresent(user.getId(), (userId, entry) -> entry.getTask() == this ? null : entry);
+            }
+        }
+
+        /**
+         * Claims this node's lease on the outbox row for this update.  Fails when the row has since been rewritten by
+         * another node (whose own task will cover this range too), or when another node is still running an earlier
+         * update for this user (in which case this one is adopted later, once that lease is released).
+         */
+        private boolean claimLease() {
+            final long now = System.currentTimeMillis();
+            final boolean claimed = reportDataUpdateRepository.claimLease(
+                    user.getId(),
+                    updateId,
+                    nodeId,
+                    new Timestamp(now),
+                    new Timestamp(now + leaseDurationInMillis)
+            ) == 1;
+            if (!claimed) {
+                System.out.printf("Node [%s] could not claim the ReportData update lease for user [%s]%n", nodeId, user.getEmail());
+            }
+            return claimed;
+        }
+    }
+
+}
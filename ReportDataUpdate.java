@@ -0,0 +1,128 @@
+package com.vb.fitnessapp.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * A pending ReportData recompute for a single user, persisted so that it survives a restart of the application.  There
+ * is at most one row per user, holding the coalesced date range of everything still waiting to be recomputed for them.
+ *
+ * The "updateId" changes every time the row is rewritten with a new range, so that a finishing update task only deletes
+ * the row if nothing newer has replaced it in the meantime.
+ *
+ * When several application nodes share the database, the node running an update first claims a lease on the row
+ * ("leaseOwner" and "leaseExpires"), so that no two nodes ever recompute the same user at the same time.
+ */
+@Entity
+@Table(name = "report_data_update")
+public final class ReportDataUpdate {
+
+    @Id
+    @Column(name = "user_id", columnDefinition = "BINARY(16)")
+    private UUID userId;
+
+    @Column(name = "update_id", columnDefinition = "BINARY(16)", nullable = false)
+    private UUID updateId;
+
+    @Column(name = "start_date", nullable = false)
+    private Date startDate;
+
+    /** Exclusive, or null when the update runs through today. */
+    @Column(name = "end_date")
+    private Date endDate;
+
+    @Column(name = "due_time", nullable = false)
+    private Timestamp dueTime;
+
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_expires")
+    private Timestamp leaseExpires;
+
+    public ReportDataUpdate(
+            final UUID userId,
+            final UUID updateId,
+            final Date startDate,
+            final Date endDate,
+            final Timestamp dueTime
+    ) {
+        this.userId = userId;
+        this.updateId = updateId;
+        this.startDate = (Date) startDate.clone();
+        this.endDate = endDate == null ? null : (Date) endDate.clone();
+        this.dueTime = (Timestamp) dueTime.clone();
+    }
+
+    public ReportDataUpdate() {
+    }
+
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public void setUserId(final UUID userId) {
+        this.userId = userId;
+    }
+
+
+    public UUID getUpdateId() {
+        return updateId;
+    }
+
+    public void setUpdateId(final UUID updateId) {
+        this.updateId = updateId;
+    }
+
+
+    public Date getStartDate() {
+        return (Date) startDate.clone();
+    }
+
+    public void setStartDate(final Date startDate) {
+        this.startDate = (Date) startDate.clone();
+    }
+
+
+    public Date getEndDate() {
+        return endDate == null ? null : (Date) endDate.clone();
+    }
+
+    public void setEndDate(final Date endDate) {
+        this.endDate = endDate == null ? null : (Date) endDate.clone();
+    }
+
+
+    public Timestamp getDueTime() {
+        return (Timestamp) dueTime.clone();
+    }
+
+    public void setDueTime(final Timestamp dueTime) {
+        this.dueTime = (Timestamp) dueTime.clone();
+    }
+
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(final String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+
+    public Timestamp getLeaseExpires() {
+        return leaseExpires == null ? null : (Timestamp) leaseExpires.clone();
+    }
+
+    public void setLeaseExpires(final Timestamp leaseExpires) {
+        this.leaseExpires = leaseExpires == null ? null : (Timestamp) leaseExpires.clone();
+    }
+
+}
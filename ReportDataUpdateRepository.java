@@ -0,0 +1,130 @@
+package com.vb.fitnessapp.repository;
+
+import com.vb.fitnessapp.domain.ReportDataUpdate;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+public interface ReportDataUpdateRepository extends CrudRepository<ReportDataUpdate, UUID> {
+
+    /**
+     * The first batch of pending updates, in user id order.  Subsequent batches are read with
+     * "findByUserIdGreaterThanOrderByUserIdAsc", which pages by the last user id seen rather than by offset.
+     */
+
+    List<ReportDataUpdate> findAllByOrderByUserIdAsc(Pageable pageable);
+
+
+    List<ReportDataUpdate> findByUserIdGreaterThanOrderByUserIdAsc(UUID userId, Pageable pageable);
+
+    /**
+     * Pending updates which fell due before "cutoff", yet have no live lease.  These were scheduled on a node which has
+     * since gone away (or which lost a lease conflict), and are free for any node to adopt.
+     */
+    @Query(
+            "SELECT reportDataUpdate FROM ReportDataUpdate reportDataUpdate "
+                    + "WHERE reportDataUpdate.dueTime < :cutoff "
+                    + "AND (reportDataUpdate.leaseExpires IS NULL OR reportDataUpdate.leaseExpires < :now) "
+                    + "ORDER BY reportDataUpdate.userId ASC"
+    )
+
+    List<ReportDataUpdate> findOrphaned(
+            @Param("cutoff") Timestamp cutoff,
+            @Param("now") Timestamp now,
+            Pageable pageable
+    );
+
+    /**
+     * Rewrites a user's pending update with a new coalesced range, but only if it's still the one identified by
+     * "expectedUpdateId" (i.e. no other node has rewritten it since it was read).  Any lease on the row is left as it
+     * is.  Returns the number of rows affected.
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "UPDATE ReportDataUpdate reportDataUpdate "
+                    + "SET reportDataUpdate.updateId = :updateId, "
+                    + "reportDataUpdate.startDate = :startDate, "
+                    + "reportDataUpdate.endDate = :endDate, "
+                    + "reportDataUpdate.dueTime = :dueTime "
+                    + "WHERE reportDataUpdate.userId = :userId "
+                    + "AND reportDataUpdate.updateId = :expectedUpdateId"
+    )
+
+    int rewrite(
+            @Param("userId") UUID userId,
+            @Param("expectedUpdateId") UUID expectedUpdateId,
+            @Param("updateId") UUID updateId,
+            @Param("startDate") Date startDate,
+            @Param("endDate") Date endDate,
+            @Param("dueTime") Timestamp dueTime
+    );
+
+    /**
+     * Claims the lease on a user's pending update for "owner", provided the row is still the one identified by
+     * "updateId" and nobody else holds a live lease on it.  Returns 1 if the lease was claimed, or 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "UPDATE ReportDataUpdate reportDataUpdate "
+                    + "SET reportDataUpdate.leaseOwner = :owner, "
+                    + "reportDataUpdate.leaseExpires = :expires "
+                    + "WHERE reportDataUpdate.userId = :userId "
+                    + "AND reportDataUpdate.updateId = :updateId "
+                    + "AND (reportDataUpdate.leaseExpires IS NULL OR reportDataUpdate.leaseExpires < :now)"
+    )
+
+    int claimLease(
+            @Param("userId") UUID userId,
+            @Param("updateId") UUID updateId,
+            @Param("owner") String owner,
+            @Param("now") Timestamp now,
+            @Param("expires") Timestamp expires
+    );
+
+    /**
+     * Gives up "owner"'s lease on a user's pending update, after the row was rewritten by another node while the
+     * owner's own update was running.  That leaves the newer update free to be adopted.
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "UPDATE ReportDataUpdate reportDataUpdate "
+                    + "SET reportDataUpdate.leaseOwner = NULL, "
+                    + "reportDataUpdate.leaseExpires = NULL "
+                    + "WHERE reportDataUpdate.userId = :userId "
+                    + "AND reportDataUpdate.leaseOwner = :owner"
+    )
+
+    int releaseLease(
+            @Param("userId") UUID userId,
+            @Param("owner") String owner
+    );
+
+    /**
+     * Deletes the pending update for a user, but only if it's still the one identified by "updateId" (i.e. it hasn't
+     * been rewritten with a newer coalesced range since).  Returns the number of rows affected.
+     */
+    @Modifying
+    @Transactional
+    @Query(
+            "DELETE FROM ReportDataUpdate reportDataUpdate "
+                    + "WHERE reportDataUpdate.userId = :userId "
+                    + "AND reportDataUpdate.updateId = :updateId"
+    )
+
+    int deleteByUserIdAndUpdateId(
+            @Param("userId") UUID userId,
+            @Param("updateId") UUID updateId
+    );
+
+}
@@ -8,26 +8,37 @@ import java.util.GregorianCalendar;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
 
+import com.vb.fitnessapp.Application;
 import com.vb.fitnessapp.domain.Exercise;
 import com.vb.fitnessapp.domain.ExercisePerformed;
 import com.vb.fitnessapp.domain.Food;
 import com.vb.fitnessapp.domain.FoodEaten;
 import com.vb.fitnessapp.domain.ReportData;
+import com.vb.fitnessapp.domain.ReportDataUpdate;
 import com.vb.fitnessapp.domain.User;
 import com.vb.fitnessapp.domain.Weight;
 import com.vb.fitnessapp.repository.ExercisePerformedRepository;
 import com.vb.fitnessapp.repository.FoodEatenRepository;
 import com.vb.fitnessapp.repository.FoodRepository;
 import com.vb.fitnessapp.repository.ReportDataRepository;
+import com.vb.fitnessapp.repository.ReportDataUpdateRepository;
 import com.vb.fitnessapp.repository.UserRepository;
 import com.vb.fitnessapp.repository.WeightRepository;
+import com.vb.fitnessapp.service.ReportDataService;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class RepositoryTest extends AbstractTest {
 
@@ -49,6 +60,12 @@ public class RepositoryTest extends AbstractTest {
     @Autowired
     private ReportDataRepository reportDataRepository;
 
+    @Autowired
+    private ReportDataUpdateRepository reportDataUpdateRepository;
+
+    @Autowired
+    private ReportDataService reportDataService;
+
     @Test
     public void testUserRepository() {
         // Test that the database is already populated with one user
@@ -98,6 +115,10 @@ public class RepositoryTest extends AbstractTest {
 
         final Weight todaysWeight = weightRepository.findByUserAndDate(user, today);
         assertNull(todaysWeight);
+
+        // Test the latest weight lookup against the full history
+        final Weight latestWeight = weightRepository.findFirstByUserOrderByDateDesc(user);
+        assertEquals(weightRepository.findByUserOrderByDateDesc(user).get(0).getId(), latestWeight.getId());
     }
 
     @Test
@@ -331,4 +352,116 @@ public class RepositoryTest extends AbstractTest {
         assertEquals(7, dateRangeReportData.size());
     }
 
+    @Test
+    public void testReportDataUpdateRepository() {
+        final User user = userRepository.findAll().iterator().next();
+        final UUID updateId = UUID.randomUUID();
+        final long now = System.currentTimeMillis();
+        reportDataUpdateRepository.save(new ReportDataUpdate(user.getId(), updateId, new Date(now), null, new Timestamp(now)));
+
+        // Only one node at a time can hold the lease on a pending update...
+        assertEquals(1, reportDataUpdateRepository.claimLease(user.getId(), updateId, "node-a", new Timestamp(now), new Timestamp(now + 60000)));
+        assertEquals(0, reportDataUpdateRepository.claimLease(user.getId(), updateId, "node-b", new Timestamp(now), new Timestamp(now + 60000)));
+
+        // ... until it expires, after which another node can take it over.
+        assertEquals(1, reportDataUpdateRepository.claimLease(user.getId(), updateId, "node-b", new Timestamp(now + 60001), new Timestamp(now + 120000)));
+        assertEquals("node-b", reportDataUpdateRepository.findOne(user.getId()).getLeaseOwner());
+
+        // A rewritten update can no longer be claimed or deleted under its old id.
+        final UUID newUpdateId = UUID.randomUUID();
+        assertEquals(1, reportDataUpdateRepository.rewrite(user.getId(), updateId, newUpdateId, new Date(now), null, new Timestamp(now)));
+        assertEquals(0, reportDataUpdateRepository.rewrite(user.getId(), updateId, UUID.randomUUID(), new Date(now), null, new Timestamp(now)));
+        assertEquals(0, reportDataUpdateRepository.deleteByUserIdAndUpdateId(user.getId(), updateId));
+
+        // Releasing the lease leaves the newer update free to be claimed, and then deleted once done.
+        assertEquals(1, reportDataUpdateRepository.releaseLease(user.getId(), "node-b"));
+        assertEquals(1, reportDataUpdateRepository.claimLease(user.getId(), newUpdateId, "node-a", new Timestamp(now), new Timestamp(now + 60000)));
+        assertEquals(1, reportDataUpdateRepository.deleteByUserIdAndUpdateId(user.getId(), newUpdateId));
+        assertNull(reportDataUpdateRepository.findOne(user.getId()));
+    }
+
+    @Test
+    public void testReportDataUpdateLeaseAcrossNodes() throws Exception {
+        // A second application node on the same database, with its own connection pool and persistence context.  It
+        // must leave the schema alone, and stay out of the way of this node's web server and JMX beans.
+        try (final ConfigurableApplicationContext otherNode = new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "server.port=0",
+                        "spring.jmx.enabled=false",
+                        "spring.jpa.hibernate.ddl-auto=none",
+                        "reportdata.cluster-mode=true",
+                        "reportdata.node-id=node-b"
+                )
+                .run()) {
+            final ReportDataUpdateRepository otherNodeRepository = otherNode.getBean(ReportDataUpdateRepository.class);
+            final User user = userRepository.findAll().iterator().next();
+            final UUID updateId = UUID.randomUUID();
+            final long now = System.currentTimeMillis();
+            reportDataUpdateRepository.save(new ReportDataUpdate(user.getId(), updateId, new Date(now), null, new Timestamp(now)));
+
+            // Both nodes race to claim the same outbox row, and exactly one of them gets it.
+            final CountDownLatch start = new CountDownLatch(1);
+            final CompletableFuture<Integer> claimedByThisNode = CompletableFuture.supplyAsync(() -> {
+                awaitQuietly(start);
+                return reportDataUpdateRepository.claimLease(user.getId(), updateId, "node-a", new Timestamp(now), new Timestamp(now + 60000));
+            });
+            final CompletableFuture<Integer> claimedByOtherNode = CompletableFuture.supplyAsync(() -> {
+                awaitQuietly(start);
+                return otherNodeRepository.claimLease(user.getId(), updateId, "node-b", new Timestamp(now), new Timestamp(now + 60000));
+            });
+            start.countDown();
+            assertEquals(1, claimedByThisNode.get(30, TimeUnit.SECONDS) + claimedByOtherNode.get(30, TimeUnit.SECONDS));
+
+            // Both nodes see the same owner, and the other node can neither claim nor release the lease.
+            final boolean thisNodeWon = claimedByThisNode.get() == 1;
+            final String owner = thisNodeWon ? "node-a" : "node-b";
+            assertEquals(owner, reportDataUpdateRepository.findOne(user.getId()).getLeaseOwner());
+            assertEquals(owner, otherNodeRepository.findOne(user.getId()).getLeaseOwner());
+            final ReportDataUpdateRepository loserRepository = thisNodeWon ? otherNodeRepository : reportDataUpdateRepository;
+            final String loser = thisNodeWon ? "node-b" : "node-a";
+            assertEquals(0, loserRepository.claimLease(user.getId(), updateId, loser, new Timestamp(now), new Timestamp(now + 60000)));
+            assertEquals(0, loserRepository.releaseLease(user.getId(), loser));
+            assertEquals(owner, reportDataUpdateRepository.findOne(user.getId()).getLeaseOwner());
+            reportDataUpdateRepository.delete(user.getId());
+
+            // Now both nodes schedule an update for the same user at once.  Whichever rewrites the outbox row last holds
+            // the only "updateId" that can be leased, so exactly one of the two ReportDataUpdateTasks writes anything.
+            final ReportDataService otherNodeService = otherNode.getBean(ReportDataService.class);
+            ReflectionTestUtils.setField(reportDataService, "clusterMode", true);
+            try {
+                final long tasksCompletedBefore = reportDataService.getMetrics().getTasksCompleted() + otherNodeService.getMetrics().getTasksCompleted();
+                final Date today = new Date(now);
+                final CountDownLatch schedule = new CountDownLatch(1);
+                final CompletableFuture<Void> scheduledOnThisNode = CompletableFuture.runAsync(() -> {
+                    awaitQuietly(schedule);
+                    reportDataService.updateUserFromDate(user, today);
+                });
+                final CompletableFuture<Void> scheduledOnOtherNode = CompletableFuture.runAsync(() -> {
+                    awaitQuietly(schedule);
+                    otherNodeService.updateUserFromDate(user, today);
+                });
+                schedule.countDown();
+                scheduledOnThisNode.get(30, TimeUnit.SECONDS);
+                scheduledOnOtherNode.get(30, TimeUnit.SECONDS);
+                for (int attempt = 0; attempt < 300 && !(reportDataService.isIdle() && otherNodeService.isIdle()); attempt++) {
+                    Thread.sleep(100);
+                }
+                assertTrue(reportDataService.isIdle() && otherNodeService.isIdle());
+                final long tasksCompleted = reportDataService.getMetrics().getTasksCompleted() + otherNodeService.getMetrics().getTasksCompleted();
+                assertEquals(tasksCompletedBefore + 1, tasksCompleted);
+                assertNull(reportDataUpdateRepository.findOne(user.getId()));
+            } finally {
+                ReflectionTestUtils.setField(reportDataService, "clusterMode", false);
+            }
+        }
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
 }
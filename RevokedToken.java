@@ -0,0 +1,69 @@
+package com.vb.fitnessapp.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.sql.Timestamp;
+
+/**
+ * A revocation of login tokens, loaded by TokenRevocationService.  The key is either "token:" followed by the id of a
+ * single revoked token (e.g. on logout), or "user:" followed by a user id, in which case all of that user's tokens
+ * issued before "revokedTime" are revoked (e.g. on a password change).  Once "expiresTime" has passed, every token the
+ * row could apply to has expired anyway, and the row can be deleted.
+ */
+@Entity
+@Table(name = "revoked_token")
+public final class RevokedToken {
+
+    @Id
+    @Column(name = "revocation_key", length = 64)
+    private String revocationKey;
+
+    @Column(name = "revoked_time", nullable = false)
+    private Timestamp revokedTime;
+
+    @Column(name = "expires_time", nullable = false)
+    private Timestamp expiresTime;
+
+    public RevokedToken(
+            final String revocationKey,
+            final Timestamp revokedTime,
+            final Timestamp expiresTime
+    ) {
+        this.revocationKey = revocationKey;
+        this.revokedTime = (Timestamp) revokedTime.clone();
+        this.expiresTime = (Timestamp) expiresTime.clone();
+    }
+
+    public RevokedToken() {
+    }
+
+
+    public String getRevocationKey() {
+        return revocationKey;
+    }
+
+    public void setRevocationKey(final String revocationKey) {
+        this.revocationKey = revocationKey;
+    }
+
+
+    public Timestamp getRevokedTime() {
+        return (Timestamp) revokedTime.clone();
+    }
+
+    public void setRevokedTime(final Timestamp revokedTime) {
+        this.revokedTime = (Timestamp) revokedTime.clone();
+    }
+
+
+    public Timestamp getExpiresTime() {
+        return (Timestamp) expiresTime.clone();
+    }
+
+    public void setExpiresTime(final Timestamp expiresTime) {
+        this.expiresTime = (Timestamp) expiresTime.clone();
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.vb.fitnessapp.repository;
+
+import com.vb.fitnessapp.domain.RevokedToken;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+public interface RevokedTokenRepository extends CrudRepository<RevokedToken, String> {
+
+
+    List<RevokedToken> findByExpiresTimeAfter(Timestamp time);
+
+
+    List<RevokedToken> findByRevokedTimeAfter(Timestamp time);
+
+    /**
+     * Deletes the revocations which can no longer apply to any unexpired token.  Returns the number of rows affected.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RevokedToken revokedToken WHERE revokedToken.expiresTime < :now")
+
+    int deleteExpired(@Param("now") Timestamp now);
+
+}
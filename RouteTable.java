@@ -0,0 +1,95 @@
+package com.vb.fitnessapp.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A table of URL patterns, each with the kind of route it declares, compiled into a trie of path segments.  A pattern
+ * is either an exact path (e.g. "/login.html"), or a path ending in "/**" (e.g. "/api/**"), which matches that path
+ * and everything beneath it.  Looking up a request URI walks the trie one segment at a time, so it costs the same no
+ * matter how many routes are declared.  An exact match wins over a "/**" one, and a longer "/**" match wins over a
+ * shorter one.
+ */
+final class RouteTable {
+
+    enum RouteType {
+
+        /** Needs no authentication at all. */
+        PUBLIC,
+
+        /** Loaded by the browser as a page, so an unauthenticated request is sent to the login page. */
+        PAGE,
+
+        /** Called from scripts, so an unauthenticated request gets a "401 Unauthorized" rather than a redirect. */
+        API
+
+    }
+
+    private final Node root = new Node();
+    private final RouteType defaultType;
+
+    /** Any URI which matches none of the declared routes is of the "defaultType". */
+    RouteTable(final RouteType defaultType) {
+        this.defaultType = defaultType;
+    }
+
+
+    RouteTable route(
+            final String pattern,
+            final RouteType type
+    ) {
+        final boolean wildcard = pattern.endsWith("/**");
+        final String path = wildcard ? pattern.substring(0, pattern.length() - 3) : pattern;
+        Node node = root;
+        int start = 1;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                node = node.children.computeIfAbsent(path.substring(start, end), segment -> new Node());
+            }
+            start = end + 1;
+        }
+        if (wildcard) {
+            node.wildcardType = type;
+        } else {
+            node.exactType = type;
+        }
+        return this;
+    }
+
+    RouteType match(final String uri) {
+        Node node = root;
+        RouteType type = root.wildcardType == null ? defaultType : root.wildcardType;
+        int start = 1;
+        while (start <= uri.length()) {
+            int end = uri.indexOf('/', start);
+            if (end < 0) {
+                end = uri.length();
+            }
+            if (end > start) {
+                node = node.children.get(uri.substring(start, end));
+                if (node == null) {
+                    return type;
+                }
+                if (node.wildcardType != null) {
+                    type = node.wildcardType;
+                }
+            }
+            start = end + 1;
+        }
+        return node.exactType != null ? node.exactType : type;
+    }
+
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private RouteType exactType;
+        private RouteType wildcardType;
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.vb.fitnessapp.config;
+
+import com.vb.fitnessapp.config.RouteTable.RouteType;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static junit.framework.TestCase.assertEquals;
+
+public class RouteTableTest {
+
+    @Test
+    public void testMatch() {
+        final RouteTable routes = new RouteTable(RouteType.PAGE)
+                .route("/login.html", RouteType.PUBLIC)
+                .route("/api/**", RouteType.API)
+                .route("/api/auth/userpass", RouteType.PUBLIC)
+                .route("/api/auth/**", RouteType.PAGE)
+                .route("/api/auth/public/**", RouteType.PUBLIC);
+
+        // An exact route wins over a "/**" one, but only for exactly that path
+        assertEquals(RouteType.PUBLIC, routes.match("/api/auth/userpass"));
+        assertEquals(RouteType.PAGE, routes.match("/api/auth/userpass/more"));
+        assertEquals(RouteType.PAGE, routes.match("/api/auth/userpassword"));
+
+        // The longest "/**" prefix wins, and "/**" also covers the path itself
+        assertEquals(RouteType.API, routes.match("/api"));
+        assertEquals(RouteType.API, routes.match("/api/user"));
+        assertEquals(RouteType.PAGE, routes.match("/api/auth/logout"));
+        assertEquals(RouteType.PUBLIC, routes.match("/api/auth/public/anything/at/all"));
+
+        // Trailing and repeated slashes don't change the match
+        assertEquals(RouteType.PUBLIC, routes.match("/api/auth/userpass/"));
+        assertEquals(RouteType.API, routes.match("/api/"));
+        assertEquals(RouteType.API, routes.match("//api//user/"));
+
+        // Anything else falls back to the default
+        assertEquals(RouteType.PAGE, routes.match("/"));
+        assertEquals(RouteType.PAGE, routes.match("/food.html"));
+        assertEquals(RouteType.PAGE, routes.match("/apis"));
+        assertEquals(RouteType.PAGE, routes.match("/login.html.bak"));
+    }
+
+    @Test
+    public void testJwtFilterRoutes() {
+        // JwtFilter's own table lets nothing but the login routes and static resources through unauthenticated
+        final RouteTable jwtFilterRoutes = JwtFilter.ROUTES;
+        assertEquals(RouteType.PUBLIC, jwtFilterRoutes.match("/api/auth/userpass"));
+        assertEquals(RouteType.PUBLIC, jwtFilterRoutes.match("/api/auth/refresh"));
+        assertEquals(RouteType.PUBLIC, jwtFilterRoutes.match("/static/css/main.css"));
+        assertEquals(RouteType.API, jwtFilterRoutes.match("/api/user"));
+        assertEquals(RouteType.PAGE, jwtFilterRoutes.match("/api/auth/logout"));
+        assertEquals(RouteType.API, jwtFilterRoutes.match("/report/get"));
+        assertEquals(RouteType.PAGE, jwtFilterRoutes.match("/report"));
+        assertEquals(RouteType.PAGE, jwtFilterRoutes.match("/staticfoo"));
+
+        // Routes are matched on the path the container routes by, not the raw URI with its dot segments
+        for (final String requestUri : new String[] { "/static/../api/user", "/static/..;/api/user", "/static/./../api/user" }) {
+            final MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+            request.setServletPath("/api/user");
+            assertEquals(RouteType.API, jwtFilterRoutes.match(JwtFilter.routedPath(request)));
+        }
+        // Nor does a context path get in the way
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/static/css/main.css");
+        request.setContextPath("/app");
+        request.setServletPath("/static");
+        request.setPathInfo("/css/main.css");
+        assertEquals(RouteType.PUBLIC, jwtFilterRoutes.match(JwtFilter.routedPath(request)));
+    }
+
+}
@@ -1,33 +1,69 @@
 package com.vb.fitnessapp.test;
 
+import com.vb.fitnessapp.config.JwtTokens;
+import com.vb.fitnessapp.config.StatementCountingDataSource;
+import com.vb.fitnessapp.config.TokenRefresher;
+import com.vb.fitnessapp.config.TokenRefresher.RefreshedTokens;
 import com.vb.fitnessapp.domain.ReportData;
+import com.vb.fitnessapp.domain.ReportDataRebuild;
+import com.vb.fitnessapp.domain.ReportDataUpdate;
 import com.vb.fitnessapp.domain.User;
+import com.vb.fitnessapp.domain.Weight;
 import com.vb.fitnessapp.dto.ExerciseDTO;
 import com.vb.fitnessapp.dto.ExercisePerformedDTO;
 import com.vb.fitnessapp.dto.FoodDTO;
 import com.vb.fitnessapp.dto.FoodEatenDTO;
 import com.vb.fitnessapp.dto.ReportDataDTO;
+import com.vb.fitnessapp.dto.ReportDataMetricsDTO;
+import com.vb.fitnessapp.dto.ReportDataRebuildDTO;
 import com.vb.fitnessapp.dto.UserDTO;
 import com.vb.fitnessapp.dto.converter.UserToUserDTO;
 import com.vb.fitnessapp.repository.FoodRepository;
+import com.vb.fitnessapp.repository.ReportDataRebuildRepository;
 import com.vb.fitnessapp.repository.ReportDataRepository;
+import com.vb.fitnessapp.repository.ReportDataUpdateRepository;
 import com.vb.fitnessapp.repository.UserRepository;
+import com.vb.fitnessapp.repository.WeightRepository;
 import com.vb.fitnessapp.service.ExerciseService;
+import com.vb.fitnessapp.service.ExpiringCache;
 import com.vb.fitnessapp.service.FoodService;
+import com.vb.fitnessapp.service.ReportDataDownsampler;
+import com.vb.fitnessapp.service.ReportDataRebuildService;
+import com.vb.fitnessapp.service.ReportDataSeriesEncoder;
 import com.vb.fitnessapp.service.ReportDataService;
+import com.vb.fitnessapp.service.TokenRevocationService;
 import com.vb.fitnessapp.service.UserService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
 import org.junit.Test;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
 import java.sql.Date;
+import java.sql.Timestamp;
 import java.text.ParseException;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static junit.framework.TestCase.*;
 
@@ -38,25 +74,46 @@ public class ServiceTest extends AbstractTest {
 
     @Autowired
     private FoodService foodService;
-fitnessapp
+
     @Autowired
     private ExerciseService exerciseService;
 
     @Autowired
     private ReportDataService reportDataService;
 
+    @Autowired
+    private ReportDataRebuildService reportDataRebuildService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private TokenRefresher tokenRefresher;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private WeightRepository weightRepository;
+
     @Autowired
     private FoodRepository foodRepository;
 
     @Autowired
     private ReportDataRepository reportDataRepository;
 
+    @Autowired
+    private ReportDataUpdateRepository reportDataUpdateRepository;
+
+    @Autowired
+    private ReportDataRebuildRepository reportDataRebuildRepository;
+
     @Autowired
     private UserToUserDTO userDTOConverter;
 
+    @Autowired
+    private RequestMappingHandlerMapping requestMappingHandlerMapping;
+
     @Test
     public void testUserService() {
         assertNull(userService.findByEmail(null));
@@ -243,4 +300,697 @@ fitnessapp
         assertTrue(allReportData.size() > 2213);
     }
 
+    @Test
+    public void testReportDataDelta() throws ParseException, ExecutionException, InterruptedException {
+        // Generate a ReportData row for today, so that there's an existing row to which deltas can be applied.
+        final User user = userRepository.findAll().iterator().next();
+        final Date today = reportDataService.adjustDateForTimeZone(new Date(System.currentTimeMillis()), ZoneId.of(user.getTimeZone()));
+        reportDataService.updateUserFromDate(user, today).get();
+        final int netCaloriesBefore = reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories();
+
+        // Adding a food eaten should add its calories directly to today's row.
+        final Date currentDate = new Date(simpleDateFormat.parse("2013-12-11").getTime());
+        final FoodDTO food = foodService.findEatenRecently(user.getId(), currentDate).get(0);
+        final FoodEatenDTO foodEaten = foodService.addFoodEaten(user.getId(), food.getId(), today);
+        int netCaloriesAfter = reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories();
+        assertEquals(netCaloriesBefore + foodEaten.getCalories(), netCaloriesAfter);
+
+        // Deleting that food eaten should subtract them back out.
+        foodService.deleteFoodEaten(foodEaten.getId());
+        netCaloriesAfter = reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories();
+        assertEquals(netCaloriesBefore, netCaloriesAfter);
+    }
+
+    @Test
+    public void testReportDataDeltaInClusterMode() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date today = reportDataService.adjustDateForTimeZone(new Date(System.currentTimeMillis()), ZoneId.of(user.getTimeZone()));
+        reportDataService.updateUserFromDate(user, today).get();
+        final int netCaloriesBefore = reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories();
+
+        // With other nodes possibly writing the same rows, a change goes through a leased update rather than a delta.
+        final Date currentDate = new Date(simpleDateFormat.parse("2013-12-11").getTime());
+        final FoodDTO food = foodService.findEatenRecently(user.getId(), currentDate).get(0);
+        final FoodEatenDTO foodEaten;
+        ReflectionTestUtils.setField(reportDataService, "clusterMode", true);
+        try {
+            final long updatesRequestedBefore = reportDataService.getMetrics().getUpdatesRequested();
+            foodEaten = foodService.addFoodEaten(user.getId(), food.getId(), today);
+            assertEquals(netCaloriesBefore, reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories());
+            assertEquals(updatesRequestedBefore + 1, reportDataService.getMetrics().getUpdatesRequested());
+            for (int attempt = 0; attempt < 300 && !reportDataService.isIdle(); attempt++) {
+                Thread.sleep(100);
+            }
+        } finally {
+            ReflectionTestUtils.setField(reportDataService, "clusterMode", false);
+        }
+        assertEquals(netCaloriesBefore + foodEaten.getCalories(), reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories());
+    }
+
+    @Test
+    public void testReportDataDeltaNeverWaits() throws ParseException, ExecutionException, InterruptedException, TimeoutException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date today = reportDataService.adjustDateForTimeZone(new Date(System.currentTimeMillis()), ZoneId.of(user.getTimeZone()));
+        reportDataService.updateUserFromDate(user, today).get();
+        final int netCaloriesBefore = reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories();
+
+        // Another user's writes don't hold up this user's delta at all.
+        final CountDownLatch otherUserReleased = new CountDownLatch(1);
+        final Future<?> otherUserWrite = holdUserLock(UUID.randomUUID(), otherUserReleased);
+        try {
+            CompletableFuture.runAsync(() -> reportDataService.applyDelta(user, today, 100, 0.0)).get(5, TimeUnit.SECONDS);
+        } finally {
+            otherUserReleased.countDown();
+            otherUserWrite.get();
+        }
+        assertEquals(netCaloriesBefore + 100, reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories());
+
+        // While this user's own ReportData is being written, the delta falls back to a scheduled update instead of waiting.
+        final long updatesRequestedBefore = reportDataService.getMetrics().getUpdatesRequested();
+        final CountDownLatch userReleased = new CountDownLatch(1);
+        final Future<?> userWrite = holdUserLock(user.getId(), userReleased);
+        try {
+            CompletableFuture.runAsync(() -> reportDataService.applyDelta(user, today, 100, 0.0)).get(5, TimeUnit.SECONDS);
+            assertEquals(netCaloriesBefore + 100, reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories());
+            assertEquals(updatesRequestedBefore + 1, reportDataService.getMetrics().getUpdatesRequested());
+        } finally {
+            userReleased.countDown();
+            userWrite.get();
+        }
+    }
+
+    @Test
+    public void testReportDataDeltaDuringRunningUpdate() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date today = reportDataService.adjustDateForTimeZone(new Date(System.currentTimeMillis()), ZoneId.of(user.getTimeZone()));
+        reportDataService.updateUserFromDate(user, today).get();
+        final int netCaloriesBefore = reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories();
+
+        // Schedule a real update covering today, and let it start running while this user's lock is held, so that its
+        // entry sits in "scheduledUserUpdates" as a running task's would.
+        final Date currentDate = new Date(simpleDateFormat.parse("2013-12-11").getTime());
+        final FoodDTO food = foodService.findEatenRecently(user.getId(), currentDate).get(0);
+        final FoodEatenDTO foodEaten;
+        final CountDownLatch userReleased = new CountDownLatch(1);
+        final Future<?> userWrite = holdUserLock(user.getId(), userReleased);
+        try {
+            reportDataService.updateUserFromDate(user, today);
+            final Map<?, ?> scheduledUserUpdates = (Map<?, ?>) ReflectionTestUtils.getField(reportDataService, "scheduledUserUpdates");
+            final Object runningEntry = scheduledUserUpdates.get(user.getId());
+            for (int attempt = 0; attempt < 300 && !(Boolean) ReflectionTestUtils.invokeMethod(runningEntry, "isStarted"); attempt++) {
+                Thread.sleep(100);
+            }
+            assertTrue((Boolean) ReflectionTestUtils.invokeMethod(runningEntry, "isStarted"));
+
+            // A change now can't be coalesced into the running task, which may already have read past it.  It has to
+            // get a fresh update of its own.
+            final ReportDataMetricsDTO metricsBefore = reportDataService.getMetrics();
+            foodEaten = foodService.addFoodEaten(user.getId(), food.getId(), today);
+            final ReportDataMetricsDTO metricsAfter = reportDataService.getMetrics();
+            assertEquals(metricsBefore.getUpdatesCoalesced(), metricsAfter.getUpdatesCoalesced());
+            assertEquals(metricsBefore.getUpdatesScheduled() + 1, metricsAfter.getUpdatesScheduled());
+            assertNotSame(runningEntry, scheduledUserUpdates.get(user.getId()));
+        } finally {
+            userReleased.countDown();
+            userWrite.get();
+        }
+
+        for (int attempt = 0; attempt < 300 && !reportDataService.isIdle(); attempt++) {
+            Thread.sleep(100);
+        }
+        assertEquals(netCaloriesBefore + foodEaten.getCalories(), reportDataRepository.findByUserAndDateOrderByDateAsc(user, today).get(0).getNetCalories());
+    }
+
+    /** Holds the given user's ReportData lock on another thread, as a running update task would, until "released". */
+    private Future<?> holdUserLock(final UUID userId, final CountDownLatch released) throws InterruptedException {
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final FutureTask<Void> future = new FutureTask<>(() -> {
+            final Object lock = ReflectionTestUtils.invokeMethod(reportDataService, "acquireUserLock", userId);
+            acquired.countDown();
+            try {
+                released.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                ReflectionTestUtils.invokeMethod(reportDataService, "releaseUserLock", userId, lock);
+            }
+        }, null);
+        new Thread(future).start();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        return future;
+    }
+
+    @Test
+    public void testBoundedReportDataUpdate() throws ParseException, ExecutionException, InterruptedException {
+        // An update with an end date should stop on the day prior to that date, rather than running through today.
+        final User user = userRepository.findAll().iterator().next();
+        final Date startDate = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date endDate = new Date(simpleDateFormat.parse("2013-12-08").getTime());
+        reportDataService.updateUserFromDate(user, startDate, endDate).get();
+
+        final Date lastDateWithGoodData = new Date(simpleDateFormat.parse("2013-12-11").getTime());
+        final List<ReportData> reportData = reportDataRepository.findByUserAndDateBetweenOrderByDateAsc(user, startDate, lastDateWithGoodData);
+        assertEquals(7, reportData.size());
+    }
+
+    @Test
+    public void testReportDataUpdateOutbox() throws ParseException, ExecutionException, InterruptedException {
+        // A scheduled update should be persisted in the outbox table while it's pending...
+        final User user = userRepository.findAll().iterator().next();
+        final Date startDate = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Future update = reportDataService.updateUserFromDate(user, startDate);
+        assertNotNull(reportDataUpdateRepository.findOne(user.getId()));
+
+        // ... and removed from it once the update has completed.
+        update.get();
+        assertNull(reportDataUpdateRepository.findOne(user.getId()));
+    }
+
+    @Test
+    public void testReportDataPendingOverlay() throws ExecutionException, InterruptedException {
+        // While an update is still pending, the dates in its range should be computed on the fly for reads...
+        final User user = userRepository.findAll().iterator().next();
+        final Calendar oneWeekAgo = new GregorianCalendar();
+        oneWeekAgo.add(Calendar.DATE, -6);
+        final Future update = reportDataService.updateUserFromDate(user, new Date(oneWeekAgo.getTime().getTime()));
+        assertEquals(0, reportDataRepository.findByUserOrderByDateAsc(user).size());
+        assertEquals(7, reportDataService.findByUser(user.getId()).size());
+
+        // ... and then match the stored rows once it has completed.
+        update.get();
+        assertEquals(7, reportDataRepository.findByUserOrderByDateAsc(user).size());
+        assertEquals(7, reportDataService.findByUser(user.getId()).size());
+    }
+
+    @Test
+    public void testReportDataRebuild() throws InterruptedException {
+        // A rebuild job should recompute each user's entire history, from their first recorded weight through today.
+        final User user = userRepository.findAll().iterator().next();
+        ReportDataRebuildDTO progress = reportDataRebuildService.startRebuild();
+        assertEquals(userRepository.count(), progress.getUsersTotal());
+        while (progress.getStatus().equals("RUNNING")) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+            progress = reportDataRebuildService.findProgress();
+        }
+        assertEquals("COMPLETE", progress.getStatus());
+        assertEquals(userRepository.count(), progress.getUsersDone());
+        assertEquals(reportDataRepository.findByUserOrderByDateAsc(user).size(), progress.getRowsWritten());
+        assertTrue(progress.getRowsWritten() > 2213);
+    }
+
+    @Test
+    public void testReportDataRebuildWithErrors() throws InterruptedException, ParseException {
+        // A user whose time zone can't be resolved fails to rebuild, and that failure is counted apart from the users done.
+        final User brokenUser = new User(
+                UUID.randomUUID(),
+                User.Gender.MALE,
+                new Date(System.currentTimeMillis()),
+                70,
+                User.ActivityLevel.SEDENTARY,
+                "broken@address.com",
+                null,
+                "Jane",
+                "Doe",
+                "Not/A_Time_Zone",
+                new Timestamp(System.currentTimeMillis()),
+                new Timestamp(System.currentTimeMillis())
+        );
+        userRepository.save(brokenUser);
+        weightRepository.save(new Weight(UUID.randomUUID(), brokenUser, new Date(simpleDateFormat.parse("2013-12-01").getTime()), 180.0));
+
+        ReportDataRebuildDTO progress = reportDataRebuildService.startRebuild();
+        while (progress.getStatus().equals("RUNNING")) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+            progress = reportDataRebuildService.findProgress();
+        }
+        assertEquals("COMPLETE_WITH_ERRORS", progress.getStatus());
+        assertEquals(1, progress.getUsersDone());
+        assertEquals(1, progress.getUsersFailed());
+    }
+
+    @Test
+    public void testReportDataRebuildClaim() throws InterruptedException {
+        final long now = System.currentTimeMillis();
+        final ReportDataRebuild rebuild = new ReportDataRebuild(UUID.randomUUID(), userRepository.count(), new Timestamp(now));
+        rebuild.setOwner("node-b");
+        rebuild.setHeartbeatTime(new Timestamp(now));
+        reportDataRebuildRepository.save(rebuild);
+
+        // Another node is still running the job, so this node neither resumes it nor starts a second one alongside it.
+        reportDataRebuildService.resumeRebuild();
+        ReportDataRebuildDTO progress = reportDataRebuildService.startRebuild();
+        assertEquals(rebuild.getId(), progress.getId());
+        assertEquals(1, reportDataRebuildRepository.count());
+        assertEquals("node-b", reportDataRebuildRepository.findOne(rebuild.getId()).getOwner());
+
+        // Once that node's heartbeat has gone stale, this node takes the job over and finishes it.
+        rebuild.setHeartbeatTime(new Timestamp(now - TimeUnit.HOURS.toMillis(1)));
+        reportDataRebuildRepository.save(rebuild);
+        progress = reportDataRebuildService.startRebuild();
+        assertEquals(rebuild.getId(), progress.getId());
+        while (progress.getStatus().equals("RUNNING")) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+            progress = reportDataRebuildService.findProgress();
+        }
+        assertEquals("COMPLETE", progress.getStatus());
+        assertEquals(reportDataService.getNodeId(), reportDataRebuildRepository.findOne(rebuild.getId()).getOwner());
+    }
+
+    @Test
+    public void testReportDataRangeAndRollup() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date december1 = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date january1 = new Date(simpleDateFormat.parse("2014-01-01").getTime());
+        reportDataService.updateUserFromDate(user, december1, january1).get();
+
+        // Test retrieving a bounded date range (2013-12-02 is a Monday, and 2013-12-15 a Sunday).
+        final Date december2 = new Date(simpleDateFormat.parse("2013-12-02").getTime());
+        final Date december15 = new Date(simpleDateFormat.parse("2013-12-15").getTime());
+        final List<ReportDataDTO> daily = reportDataService.findByUser(user.getId(), december2, december15, ReportDataService.Granularity.DAILY);
+        assertEquals(14, daily.size());
+
+        // Test rolling the same range up into weeks, whose values are averages per day.
+        final List<ReportDataDTO> weekly = reportDataService.findByUser(user.getId(), december2, december15, ReportDataService.Granularity.WEEKLY);
+        assertEquals(2, weekly.size());
+        assertEquals(december2, weekly.get(0).getDate());
+        double totalPounds = 0.0;
+        for (final ReportDataDTO reportData : daily.subList(0, 7)) {
+            totalPounds += reportData.getPounds();
+        }
+        assertEquals(totalPounds / 7, weekly.get(0).getPounds(), 0.0001);
+
+        // Test rolling a whole month up.
+        final Date december31 = new Date(simpleDateFormat.parse("2013-12-31").getTime());
+        final List<ReportDataDTO> monthly = reportDataService.findByUser(user.getId(), december1, december31, ReportDataService.Granularity.MONTHLY);
+        assertEquals(1, monthly.size());
+        assertEquals(december1, monthly.get(0).getDate());
+    }
+
+    @Test
+    public void testReportDataOverlayOutsideWindow() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date december1 = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date january1 = new Date(simpleDateFormat.parse("2014-01-01").getTime());
+        reportDataService.updateUserFromDate(user, december1, january1).get();
+        final Date december4 = new Date(simpleDateFormat.parse("2013-12-04").getTime());
+        final Date december26 = new Date(simpleDateFormat.parse("2013-12-26").getTime());
+        StatementCountingDataSource.start();
+        final List<ReportDataDTO> weekly = reportDataService.findByUser(user.getId(), december4, december26, ReportDataService.Granularity.WEEKLY);
+        final int statementsWithoutClusterMode = StatementCountingDataSource.stop();
+
+        // A pending update years before the window adds nothing to the read but the one outbox lookup, and leaves the
+        // stored weekly rollups in use.
+        final Date january2008 = new Date(simpleDateFormat.parse("2008-01-01").getTime());
+        final Date february2008 = new Date(simpleDateFormat.parse("2008-02-01").getTime());
+        reportDataUpdateRepository.save(new ReportDataUpdate(user.getId(), UUID.randomUUID(), january2008, february2008, new Timestamp(System.currentTimeMillis())));
+        ReflectionTestUtils.setField(reportDataService, "clusterMode", true);
+        try {
+            StatementCountingDataSource.start();
+            final List<ReportDataDTO> weeklyWithPendingUpdate = reportDataService.findByUser(user.getId(), december4, december26, ReportDataService.Granularity.WEEKLY);
+            assertEquals(statementsWithoutClusterMode + 1, StatementCountingDataSource.stop());
+            assertEquals(weekly, weeklyWithPendingUpdate);
+        } finally {
+            ReflectionTestUtils.setField(reportDataService, "clusterMode", false);
+            reportDataUpdateRepository.delete(user.getId());
+        }
+    }
+
+    @Test
+    public void testReportDataRollUpTables() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date december1 = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date december31 = new Date(simpleDateFormat.parse("2013-12-31").getTime());
+        final Date january1 = new Date(simpleDateFormat.parse("2014-01-01").getTime());
+        reportDataService.updateUserFromDate(user, december1, january1).get();
+
+        // The whole month is read from the "report_month" table, and should match the daily rows rolled up.
+        final List<ReportDataDTO> daily = reportDataService.findByUser(user.getId(), december1, december31, ReportDataService.Granularity.DAILY);
+        double totalNetPoints = 0.0;
+        for (final ReportDataDTO reportData : daily) {
+            totalNetPoints += reportData.getNetPoints();
+        }
+        final List<ReportDataDTO> monthly = reportDataService.findByUser(user.getId(), december1, december31, ReportDataService.Granularity.MONTHLY);
+        assertEquals(1, monthly.size());
+        assertEquals(totalNetPoints / 31, monthly.get(0).getNetPoints(), 0.0001);
+
+        // A delta applied to a single day should be carried into the stored month too.
+        final Date december10 = new Date(simpleDateFormat.parse("2013-12-10").getTime());
+        reportDataService.applyDelta(user, december10, 0, 31.0);
+        final List<ReportDataDTO> monthlyAfterDelta = reportDataService.findByUser(user.getId(), december1, december31, ReportDataService.Granularity.MONTHLY);
+        assertEquals(monthly.get(0).getNetPoints() + 1.0, monthlyAfterDelta.get(0).getNetPoints(), 0.0001);
+    }
+
+    @Test
+    public void testReportDataStreaming() throws ParseException, ExecutionException, InterruptedException {
+        // Streaming should produce exactly the same rows as loading them all at once, with or without a rollup.
+        final User user = userRepository.findAll().iterator().next();
+        final Date december1 = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date january1 = new Date(simpleDateFormat.parse("2014-01-01").getTime());
+        reportDataService.updateUserFromDate(user, december1, january1).get();
+
+        final List<ReportDataDTO> streamed = new ArrayList<>();
+        reportDataService.streamByUser(user.getId(), december1, null, ReportDataService.Granularity.DAILY, streamed::add);
+        assertEquals(31, streamed.size());
+        assertEquals(reportDataService.findByUser(user.getId(), december1, null, ReportDataService.Granularity.DAILY), streamed);
+
+        final List<ReportDataDTO> streamedWeekly = new ArrayList<>();
+        reportDataService.streamByUser(user.getId(), december1, null, ReportDataService.Granularity.WEEKLY, streamedWeekly::add);
+        final List<ReportDataDTO> weekly = reportDataService.findByUser(user.getId(), december1, null, ReportDataService.Granularity.WEEKLY);
+        assertEquals(weekly.size(), streamedWeekly.size());
+        assertEquals(weekly.get(0).getPounds(), streamedWeekly.get(0).getPounds(), 0.0001);
+
+        // Two years of rows span more than one page, and still come out whole and in order.
+        final Date january2012 = new Date(simpleDateFormat.parse("2012-01-01").getTime());
+        reportDataService.updateUserFromDate(user, january2012, december1).get();
+        final List<ReportDataDTO> streamedPages = new ArrayList<>();
+        reportDataService.streamByUser(user.getId(), january2012, null, ReportDataService.Granularity.DAILY, streamedPages::add);
+        assertEquals(731, streamedPages.size());
+        assertEquals(reportDataService.findByUser(user.getId(), january2012, null, ReportDataService.Granularity.DAILY), streamedPages);
+    }
+
+    @Test
+    public void testReportDataDownsampling() {
+        // A flat year of data, with a single spike in each series on different days.
+        final UUID userId = UUID.randomUUID();
+        final List<ReportDataDTO> reportData = new ArrayList<>();
+        final java.time.LocalDate firstDay = java.time.LocalDate.of(2014, 1, 1);
+        for (int day = 0; day < 365; day++) {
+            reportData.add(new ReportDataDTO(
+                    UUID.randomUUID(),
+                    userId,
+                    Date.valueOf(firstDay.plusDays(day)),
+                    day == 100 ? 250.0 : 200.0,
+                    day == 200 ? 4000 : 2000,
+                    day == 300 ? 60.0 : 30.0
+            ));
+        }
+
+        final List<ReportDataDTO> downsampled = ReportDataDownsampler.downsample(reportData, 60);
+        assertTrue(downsampled.size() <= 60);
+        assertEquals(reportData.get(0), downsampled.get(0));
+        assertEquals(reportData.get(364), downsampled.get(downsampled.size() - 1));
+        assertTrue(downsampled.contains(reportData.get(100)));
+        assertTrue(downsampled.contains(reportData.get(200)));
+        assertTrue(downsampled.contains(reportData.get(300)));
+        for (int index = 1; index < downsampled.size(); index++) {
+            assertTrue(downsampled.get(index - 1).getDate().before(downsampled.get(index).getDate()));
+        }
+
+        // Below three points per series, the picks are capped at "maxPoints", still keeping the first and last rows.
+        for (int maxPoints = 3; maxPoints < 9; maxPoints++) {
+            final List<ReportDataDTO> capped = ReportDataDownsampler.downsample(reportData, maxPoints);
+            assertTrue(capped.size() <= maxPoints);
+            assertEquals(reportData.get(0), capped.get(0));
+            assertEquals(reportData.get(364), capped.get(capped.size() - 1));
+        }
+
+        // Series already within the limit are returned untouched.
+        assertSame(reportData, ReportDataDownsampler.downsample(reportData, 365));
+    }
+
+    @Test
+    public void testReportDataSeriesEncoding() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date december1 = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date january1 = new Date(simpleDateFormat.parse("2014-01-01").getTime());
+        reportDataService.updateUserFromDate(user, december1, january1).get();
+        final List<ReportDataDTO> reportData = reportDataService.findByUser(user.getId(), december1, null, ReportDataService.Granularity.DAILY);
+
+        // The encoded form should be several times smaller than the JSON one, and decode back to the same values.
+        final byte[] encoded = ReportDataSeriesEncoder.encode(reportData);
+        assertTrue(encoded.length < reportData.size() * 20);
+        final List<ReportDataDTO> decoded = ReportDataSeriesEncoder.decode(encoded, user.getId());
+        assertEquals(reportData.size(), decoded.size());
+        for (int index = 0; index < reportData.size(); index++) {
+            assertEquals(reportData.get(index).getDate(), decoded.get(index).getDate());
+            assertEquals(reportData.get(index).getPounds(), decoded.get(index).getPounds(), 0.005);
+            assertEquals(reportData.get(index).getNetCalories(), decoded.get(index).getNetCalories());
+            assertEquals(reportData.get(index).getNetPoints(), decoded.get(index).getNetPoints(), 0.005);
+        }
+        assertTrue(ReportDataSeriesEncoder.decode(ReportDataSeriesEncoder.encode(new ArrayList<>()), user.getId()).isEmpty());
+    }
+
+    @Test
+    public void testReportDataMetrics() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date december1 = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date december5 = new Date(simpleDateFormat.parse("2013-12-05").getTime());
+        final Date december20 = new Date(simpleDateFormat.parse("2013-12-20").getTime());
+        final Date january1 = new Date(simpleDateFormat.parse("2014-01-01").getTime());
+        final ReportDataMetricsDTO before = reportDataService.getMetrics();
+
+        // The second request falls within the first one's range, and so is coalesced into it.
+        final Future update = reportDataService.updateUserFromDate(user, december1, january1);
+        assertNull(reportDataService.updateUserFromDate(user, december5, december20));
+        update.get();
+
+        final ReportDataMetricsDTO after = reportDataService.getMetrics();
+        assertEquals(before.getUpdatesRequested() + 2, after.getUpdatesRequested());
+        assertEquals(before.getUpdatesScheduled() + 1, after.getUpdatesScheduled());
+        assertEquals(before.getUpdatesCoalesced() + 1, after.getUpdatesCoalesced());
+        assertEquals(before.getTasksCompleted() + 1, after.getTasksCompleted());
+        assertEquals(before.getDaysRecomputed().getSum() + 31, after.getDaysRecomputed().getSum());
+        assertTrue(after.getStatementsPerTask().getSum() > before.getStatementsPerTask().getSum());
+        assertEquals(after.getTaskDurationMillis().getCount(), after.getStatementsPerTask().getCount());
+    }
+
+    @Test
+    public void testReportDataAdmissionControl() throws ParseException, ExecutionException, InterruptedException {
+        final User user = userRepository.findAll().iterator().next();
+        final Date december1 = new Date(simpleDateFormat.parse("2013-12-01").getTime());
+        final Date january1 = new Date(simpleDateFormat.parse("2014-01-01").getTime());
+        final long deferredBefore = reportDataService.getMetrics().getUpdatesDeferred();
+
+        // With no pending budget at all, an update is deferred to the outbox rather than scheduled.
+        ReflectionTestUtils.setField(reportDataService, "maxPendingUpdates", 0);
+        try {
+            assertTrue(reportDataService.isOverloaded());
+            assertNull(reportDataService.updateUserFromDate(user, december1, january1));
+            assertEquals(deferredBefore + 1, reportDataService.getMetrics().getUpdatesDeferred());
+            assertNotNull(reportDataUpdateRepository.findOne(user.getId()));
+        } finally {
+            ReflectionTestUtils.setField(reportDataService, "maxPendingUpdates", 10000);
+        }
+
+        // Once there's room again, a later request merges with the deferred one and is scheduled as usual.
+        assertFalse(reportDataService.isOverloaded());
+        final Date december15 = new Date(simpleDateFormat.parse("2013-12-15").getTime());
+        reportDataService.updateUserFromDate(user, december15, january1).get();
+        assertNull(reportDataUpdateRepository.findOne(user.getId()));
+        assertEquals(1, reportDataService.findByUser(user.getId(), december1, december1, ReportDataService.Granularity.DAILY).size());
+    }
+
+    @Test
+    public void testReportDataBackpressureRoutes() throws Exception {
+        // Each write that schedules a ReportData update is behind the backpressure interceptor, at its real request path.
+        for (final String[] route : new String[][] {
+                {"POST", "/api/foodeaten"},
+                {"POST", "/api/food/update"},
+                {"POST", "/api/user/weight/2014-01-01"},
+                {"POST", "/exercise/performed/add"},
+                {"POST", "/exercise/performed/update"}
+        }) {
+            assertNotNull(route[1], findBackpressureInterceptor(route[0], route[1]));
+        }
+        assertNull(findBackpressureInterceptor("POST", "/api/user/password"));
+    }
+
+    @Test
+    public void testReportDataBackpressureExemption() throws Exception {
+        final User user = userRepository.findAll().iterator().next();
+        final HandlerInterceptor interceptor = findBackpressureInterceptor("POST", "/api/foodeaten");
+        final Date today = reportDataService.adjustDateForTimeZone(new Date(System.currentTimeMillis()), ZoneId.of(user.getTimeZone()));
+        reportDataService.updateUserFromDate(user, today);
+        assertTrue(reportDataService.hasPendingUpdate(user.getId()));
+
+        // With the budget used up, a user whose update is still pending gets through, since the write merges into it.
+        ReflectionTestUtils.setField(reportDataService, "maxPendingUpdates", 1);
+        try {
+            assertTrue(reportDataService.isOverloaded());
+            final MockHttpServletRequest pendingUserRequest = new MockHttpServletRequest("POST", "/api/foodeaten");
+            pendingUserRequest.setAttribute("userId", user.getId().toString());
+            assertTrue(interceptor.preHandle(pendingUserRequest, new MockHttpServletResponse(), null));
+
+            // Anyone else is told to come back once deferred updates are next picked up.
+            final MockHttpServletRequest otherUserRequest = new MockHttpServletRequest("POST", "/api/foodeaten");
+            otherUserRequest.setAttribute("userId", UUID.randomUUID().toString());
+            final MockHttpServletResponse otherUserResponse = new MockHttpServletResponse();
+            assertFalse(interceptor.preHandle(otherUserRequest, otherUserResponse, null));
+            assertEquals(503, otherUserResponse.getStatus());
+            assertEquals("60", otherUserResponse.getHeader("Retry-After"));
+        } finally {
+            ReflectionTestUtils.setField(reportDataService, "maxPendingUpdates", 10000);
+        }
+    }
+
+    private HandlerInterceptor findBackpressureInterceptor(final String method, final String uri) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setContentType("application/json");
+        final HandlerExecutionChain chain = requestMappingHandlerMapping.getHandler(request);
+        assertNotNull(uri, chain);
+        for (final HandlerInterceptor interceptor : chain.getInterceptors()) {
+            if (interceptor.getClass().getSimpleName().equals("ReportDataBackpressureInterceptor")) {
+                return interceptor;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testUserCache() throws ParseException {
+        final User user = userRepository.findAll().iterator().next();
+        ReflectionTestUtils.setField(userService, "userCacheTtlInMillis", 60000L);
+        try {
+            // Callers get their own copy of the cached UserDTO, so changes to it don't leak into the cache.
+            final UserDTO userDTO = userService.findByEmail(user.getEmail());
+            final String firstName = userDTO.getFirstName();
+            userDTO.setFirstName("Changed");
+            assertEquals(firstName, userService.findByEmail(user.getEmail()).getFirstName());
+
+            // Updating the user's weight invalidates the cached entry.
+            final Date date = new Date(simpleDateFormat.parse("2099-01-01").getTime());
+            userService.updateWeight(userDTO, date, 123.4);
+            assertEquals(123.4, userService.findByEmail(user.getEmail()).getCurrentWeight(), 0.0001);
+
+            // As does updating the profile.
+            final UserDTO updatedUserDTO = userService.findByEmail(user.getEmail());
+            updatedUserDTO.setLastName("Updated");
+            userService.updateUser(updatedUserDTO);
+            assertEquals("Updated", userService.findByEmail(user.getEmail()).getLastName());
+        } finally {
+            ReflectionTestUtils.setField(userService, "userCacheTtlInMillis", 0L);
+        }
+    }
+
+    @Test
+    public void testExpiringCache() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>(2);
+        final long inAMinute = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        cache.put("a", "1", inAMinute);
+        cache.put("expired", "2", System.currentTimeMillis() - 1);
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("expired"));
+        assertNull(cache.get("missing"));
+
+        // When full, expired entries are swept out first, and if that frees nothing then everything goes
+        cache.put("b", "3", System.currentTimeMillis() - 1);
+        cache.put("c", "4", inAMinute);
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("a"));
+        cache.put("d", "5", inAMinute);
+        assertEquals(1, cache.size());
+        assertEquals("5", cache.get("d"));
+    }
+
+    @Test
+    public void testUserProfileVersion() {
+        final User user = userRepository.findAll().iterator().next();
+        ReflectionTestUtils.setField(userService, "userCacheTtlInMillis", 60000L);
+        try {
+            final int profileVersion = userService.findProfileVersion(user.getId());
+            assertTrue(userService.isProfileVersionCurrent(user.getId(), profileVersion));
+
+            // Updating the profile bumps the version, leaving tokens stamped with the old one stale.
+            final UserDTO userDTO = userService.findByEmail(user.getEmail());
+            userDTO.setTimeZone("America/Chicago");
+            userService.updateUser(userDTO);
+            assertEquals(profileVersion + 1, (int) userService.findProfileVersion(user.getId()));
+            assertFalse(userService.isProfileVersionCurrent(user.getId(), profileVersion));
+
+            // Saving a copy of the user read before the update doesn't roll the version back.
+            userRepository.save(user);
+            assertEquals(profileVersion + 1, (int) userRepository.findProfileVersionById(user.getId()));
+        } finally {
+            ReflectionTestUtils.setField(userService, "userCacheTtlInMillis", 0L);
+        }
+    }
+
+    @Test
+    public void testPasswordHashingPool() throws ExecutionException, InterruptedException {
+        final UserDTO userDTO = userService.findByEmail(userRepository.findAll().iterator().next().getEmail());
+        userService.updateUserAsync(userDTO, "password").get();
+        assertTrue(userService.verifyPasswordAsync(userDTO, "password").get());
+        assertFalse(userService.verifyPasswordAsync(userDTO, "wrongPassword").get());
+
+        // Jobs beyond an account's share of the pool are turned away.
+        ReflectionTestUtils.setField(userService, "maxPasswordJobsPerAccount", 0);
+        try {
+            final CompletableFuture<Boolean> rejected = userService.verifyPasswordAsync(userDTO, "password");
+            try {
+                rejected.get();
+                fail("Expected the password job to be rejected");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        } finally {
+            ReflectionTestUtils.setField(userService, "maxPasswordJobsPerAccount", 2);
+        }
+        assertTrue(userService.verifyPasswordAsync(userDTO, "password").get());
+    }
+
+    @Test
+    public void testTokenRevocation() throws ExecutionException, InterruptedException {
+        final java.util.Date hourAgo = new java.util.Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        final java.util.Date inAnHour = new java.util.Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+        // A single revoked token
+        final String tokenId = UUID.randomUUID().toString();
+        assertFalse(tokenRevocationService.isRevoked(tokenId, null, hourAgo));
+        tokenRevocationService.revokeToken(tokenId, inAnHour);
+        assertTrue(tokenRevocationService.isRevoked(tokenId, null, hourAgo));
+        assertFalse(tokenRevocationService.isRevoked(UUID.randomUUID().toString(), null, hourAgo));
+
+        // Changing the password revokes all of the user's tokens issued before then, but not the ones issued after
+        final UserDTO userDTO = userService.findByEmail(userRepository.findAll().iterator().next().getEmail());
+        final String userId = userDTO.getId().toString();
+        assertFalse(tokenRevocationService.isRevoked(UUID.randomUUID().toString(), userId, hourAgo));
+        userService.updateUserAsync(userDTO, "newPassword").get();
+        assertTrue(tokenRevocationService.isRevoked(UUID.randomUUID().toString(), userId, hourAgo));
+        assertFalse(tokenRevocationService.isRevoked(UUID.randomUUID().toString(), userId, inAnHour));
+    }
+
+    @Test
+    public void testTokenRefresher() {
+        final UserDTO userDTO = userService.findByEmail(userRepository.findAll().iterator().next().getEmail());
+        final int profileVersion = userService.findProfileVersion(userDTO.getId());
+
+        // The new access token carries the user's current time zone and profile version, not the refresh token's
+        final String staleToken = JwtTokens.issueRefreshToken(userDTO.getEmail(), userDTO.getId(), "Pacific/Chatham", profileVersion - 1);
+        final RefreshedTokens refreshed = tokenRefresher.refresh(staleToken);
+        assertNotNull(refreshed);
+        assertNull(refreshed.getRefreshToken());
+        final Claims accessClaims = JwtTokens.parseAccessToken(refreshed.getAccessToken());
+        assertEquals(userDTO.getTimeZone(), accessClaims.get("timeZone"));
+        assertEquals(profileVersion, accessClaims.get("profileVersion"));
+
+        // A refresh token past half its lifetime is replaced, and then revoked
+        final String agingTokenId = UUID.randomUUID().toString();
+        final String agingToken = Jwts.builder()
+                .setId(agingTokenId)
+                .claim("email", userDTO.getEmail())
+                .claim("userId", userDTO.getId().toString())
+                .claim("timeZone", "Pacific/Chatham")
+                .claim("profileVersion", profileVersion - 1)
+                .claim("type", "refresh")
+                .setIssuedAt(new java.util.Date())
+                .setExpiration(new java.util.Date(System.currentTimeMillis() + JwtTokens.REFRESH_TOKEN_TTL_IN_MILLIS / 2 - TimeUnit.MINUTES.toMillis(1)))
+                .signWith(SignatureAlgorithm.HS256, (String) ReflectionTestUtils.getField(JwtTokens.class, "SECRET_KEY"))
+                .compact();
+        final RefreshedTokens slid = tokenRefresher.refresh(agingToken);
+        assertNotNull(slid.getRefreshToken());
+        final Claims slidClaims = JwtTokens.parseRefreshToken(slid.getRefreshToken());
+        assertEquals(userDTO.getTimeZone(), slidClaims.get("timeZone"));
+        assertEquals(profileVersion, slidClaims.get("profileVersion"));
+        assertTrue(tokenRevocationService.isRevoked(agingTokenId, null, null));
+
+        // Requests racing the one which replaced it get the same tokens for a moment, and then nothing
+        assertSame(slid, tokenRefresher.refresh(agingToken));
+        ((ExpiringCache<String, ?>) ReflectionTestUtils.getField(tokenRefresher, "recentlySlidTokens")).remove(agingTokenId);
+        assertNull(tokenRefresher.refresh(agingToken));
+        assertNotNull(tokenRefresher.refresh(slid.getRefreshToken()));
+
+        // Nor is anything issued for a user who doesn't exist
+        assertNull(tokenRefresher.refresh(JwtTokens.issueRefreshToken("nobody@example.com", UUID.randomUUID(), "UTC", 0)));
+    }
+
 }
@@ -0,0 +1,72 @@
+package com.vb.fitnessapp.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Wraps the application's DataSource, to count the JDBC statements prepared on the current thread between "start()" and
+ * "stop()".  ReportDataService uses this to record how many statements each update task issues, whether they come
+ * through JPA repositories or JdbcTemplate.  A JDBC batch counts as a single statement.
+ *
+ * Threads that never call "start()" pay only for a ThreadLocal lookup per statement.
+ */
+public final class StatementCountingDataSource extends DelegatingDataSource {
+
+    private static final ThreadLocal<int[]> STATEMENT_COUNTS = new ThreadLocal<>();
+
+    public StatementCountingDataSource(final DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+
+    public static void start() {
+        STATEMENT_COUNTS.set(new int[1]);
+    }
+
+    /**
+     * Returns the number of statements prepared on this thread since "start()", and stops counting.
+     */
+
+    public static int stop() {
+        final int[] statementCount = STATEMENT_COUNTS.get();
+        STATEMENT_COUNTS.remove();
+        return statementCount == null ? 0 : statementCount[0];
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countingConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        return countingConnection(super.getConnection(username, password));
+    }
+
+
+    private static Connection countingConnection(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("prepare") || method.getName().equals("createStatement")) {
+                        final int[] statementCount = STATEMENT_COUNTS.get();
+                        if (statementCount != null) {
+                            statementCount[0]++;
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                }
+        );
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.vb.fitnessapp.config;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.filter.GenericFilterBean;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Answers GET and HEAD requests for static resources ("/static/**") straight from the resource handler, ahead of every
+ * other filter.  Each page pulls in several stylesheets, scripts and fonts, and none of them need JwtFilter's token
+ * checks, or the DispatcherServlet's handler lookup.  Other requests are passed along the chain as usual.
+ *
+ * The build makes a fingerprinted copy of every static asset, with a hash of its content in the file name, and
+ * rewrites the pages to refer to those copies (see "build.gradle").  A fingerprinted copy's content can never change
+ * under the same name, so it's served with a one year, "immutable" Cache-Control, and repeat page loads need no
+ * round trips for it at all.  The fingerprinted paths are read from the manifest which the build writes alongside.
+ */
+final class StaticResourceFilter extends GenericFilterBean {
+
+    static final String PATH_PREFIX = "/static/";
+    static final String MANIFEST_LOCATION = "asset-manifest.properties";
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final ResourceHttpRequestHandler resourceHandler;
+    private final Set<String> fingerprintedPaths;
+
+    StaticResourceFilter(
+            final ResourceHttpRequestHandler resourceHandler,
+            final Set<String> fingerprintedPaths
+    ) {
+        this.resourceHandler = resourceHandler;
+        this.fingerprintedPaths = fingerprintedPaths;
+    }
+
+    /**
+     * Reads the request paths of the fingerprinted assets from the manifest written by the build, which maps each
+     * asset's original path to the path of its fingerprinted copy.  When there's no manifest (e.g. when running from an
+     * IDE, rather than from a Gradle build), nothing is fingerprinted.
+     */
+    static Set<String> loadFingerprintedPaths() {
+        final ClassPathResource manifest = new ClassPathResource(MANIFEST_LOCATION);
+        if (!manifest.exists()) {
+            System.out.printf("No %s found, so static assets won't be cached as immutable%n", MANIFEST_LOCATION);
+            return Collections.emptySet();
+        }
+        final Properties properties = new Properties();
+        try (final InputStream inputStream = manifest.getInputStream()) {
+            properties.load(inputStream);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final Set<String> fingerprintedPaths = new HashSet<>();
+        for (final String originalPath : properties.stringPropertyNames()) {
+            fingerprintedPaths.add("/" + properties.getProperty(originalPath));
+        }
+        return fingerprintedPaths;
+    }
+
+    @Override
+    public void doFilter(
+            final ServletRequest request,
+            final ServletResponse response,
+            final FilterChain chain
+    ) throws IOException, ServletException {
+        final HttpServletRequest httpServletRequest = (HttpServletRequest) request;
+        final String method = httpServletRequest.getMethod();
+        final String uri = httpServletRequest.getRequestURI();
+        if (!("GET".equals(method) || "HEAD".equals(method)) || !uri.startsWith(PATH_PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (fingerprintedPaths.contains(uri)) {
+            ((HttpServletResponse) response).setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        }
+        // The resource handler resolves this path against its locations, just as it would behind a handler mapping
+        request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, uri.substring(PATH_PREFIX.length()));
+        resourceHandler.handleRequest(httpServletRequest, (HttpServletResponse) response);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.vb.fitnessapp.config;
+
+import com.vb.fitnessapp.dto.UserDTO;
+import com.vb.fitnessapp.service.ExpiringCache;
+import com.vb.fitnessapp.service.TokenRevocationService;
+import com.vb.fitnessapp.service.UserService;
+import io.jsonwebtoken.Claims;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues new tokens from a refresh token (see JwtTokens), both for JwtFilter when a request's access token cookie has
+ * expired, and for "/api/auth/refresh" when a script asks for it.
+ *
+ * The email, time zone and profile version in the new tokens are reloaded through UserService (whose lookups are
+ * cached), rather than copied from the refresh token, so that a sliding refresh token doesn't carry a stale profile
+ * forever.  A refresh token which has been replaced is revoked, so that only its replacement can be used from then on.
+ */
+public class TokenRefresher {
+
+    /**
+     * A page makes several requests at once, and when its access token has expired each of them refreshes it.  The
+     * first one to replace the refresh token revokes it, so for a short while afterwards the others are given the same
+     * new tokens rather than being turned away.  At most MAX_RECENTLY_SLID_TOKENS are remembered (see ExpiringCache).
+     */
+    private static final long SLID_TOKEN_GRACE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_RECENTLY_SLID_TOKENS = 10000;
+
+    private final ExpiringCache<String, RefreshedTokens> recentlySlidTokens = new ExpiringCache<>(MAX_RECENTLY_SLID_TOKENS);
+
+    private final UserService userService;
+    private final TokenRevocationService tokenRevocationService;
+
+    public TokenRefresher(
+            final UserService userService,
+            final TokenRevocationService tokenRevocationService
+    ) {
+        this.userService = userService;
+        this.tokenRevocationService = tokenRevocationService;
+    }
+
+    /**
+     * Returns a new access token (and a replacement refresh token, if it's due) for the given refresh token, or null if
+     * it isn't a valid, unrevoked refresh token for a user who still exists.
+     */
+    public RefreshedTokens refresh(final String refreshToken) {
+        final Claims refreshClaims = JwtTokens.parseRefreshToken(refreshToken);
+        if (refreshClaims == null || refreshClaims.get("userId") == null) {
+            return null;
+        }
+        if (refreshClaims.getId() != null) {
+            final RefreshedTokens recentlySlid = recentlySlidTokens.get(refreshClaims.getId());
+            if (recentlySlid != null) {
+                return recentlySlid;
+            }
+        }
+        if (tokenRevocationService.isRevoked(refreshClaims.getId(), (String) refreshClaims.get("userId"), refreshClaims.getIssuedAt())) {
+            return null;
+        }
+
+        // A user's email never changes, but make sure it still belongs to the same user
+        final UserDTO userDTO = userService.findByEmail((String) refreshClaims.get("email"));
+        final UUID userId = UUID.fromString((String) refreshClaims.get("userId"));
+        final Integer profileVersion = userService.findProfileVersion(userId);
+        if (userDTO == null || !userId.equals(userDTO.getId()) || profileVersion == null) {
+            return null;
+        }
+
+        final RefreshedTokens refreshedTokens = new RefreshedTokens(
+                JwtTokens.refreshAccessToken(refreshClaims, userDTO.getEmail(), userDTO.getTimeZone(), profileVersion),
+                JwtTokens.slideRefreshToken(refreshClaims, userDTO.getEmail(), userDTO.getTimeZone(), profileVersion)
+        );
+        if (refreshedTokens.getRefreshToken() != null && refreshClaims.getId() != null) {
+            recentlySlidTokens.put(refreshClaims.getId(), refreshedTokens, System.currentTimeMillis() + SLID_TOKEN_GRACE_IN_MILLIS);
+            tokenRevocationService.revokeToken(refreshClaims.getId(), refreshClaims.getExpiration());
+        }
+        return refreshedTokens;
+    }
+
+    /**
+     * A new access token, and the refresh token which replaces the one it was issued from (or null if that one was
+     * kept).
+     */
+    public static class RefreshedTokens {
+
+        private final String accessToken;
+        private final String refreshToken;
+
+        public RefreshedTokens(
+                final String accessToken,
+                final String refreshToken
+        ) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+        }
+
+
+        public final String getAccessToken() {
+            return accessToken;
+        }
+
+
+        public final String getRefreshToken() {
+            return refreshToken;
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.vb.fitnessapp.service;
+
+import com.vb.fitnessapp.config.JwtTokens;
+import com.vb.fitnessapp.domain.RevokedToken;
+import com.vb.fitnessapp.repository.RevokedTokenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revokes login tokens before they expire, without giving up on checking tokens with no database I/O (see JwtFilter).
+ *
+ * Revocations are persisted in the "revoked_token" table (see RevokedToken), and all of the unexpired ones are held in
+ * memory in "revocations".  The check on every request goes to a Bloom filter of their keys first, which answers "no"
+ * for almost every token without touching the map at all.  Only on a positive hit is the exact entry looked up.
+ *
+ * Every "token-revocation.poll-interval-in-millis", revocations made on other nodes are read from the table, and expired
+ * ones are purged.  So a revocation made elsewhere takes effect here within one poll.  The Bloom filter is rebuilt after
+ * a purge, or when it has grown past the "token-revocation.expected-revocations" it was sized for.
+ */
+@Service
+public final class TokenRevocationService {
+
+    private static final String TOKEN_PREFIX = "token:";
+    private static final String USER_PREFIX = "user:";
+    private static final double FALSE_POSITIVE_RATE = 0.001;
+
+    /** Revocations read by a poll overlap the previous poll by this much, so that clock skew between nodes loses none. */
+    private static final long POLL_OVERLAP_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final ScheduledExecutorService pollThread;
+
+    /** Revocation keys, mapped to their revoked and expires times. */
+    private final Map<String, Revocation> revocations = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+    private int bloomFilterCapacity;
+    private long lastPollTime;
+
+    @Value("${token-revocation.poll-interval-in-millis:10000}")
+    private long pollIntervalInMillis;
+
+    @Value("${token-revocation.expected-revocations:100000}")
+    private int expectedRevocations;
+
+    @Autowired
+    public TokenRevocationService(final RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.pollThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "token-revocation-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Builds the in-memory revocations and their Bloom filter from the table, and starts polling it.
+     */
+    @PostConstruct
+    public void init() {
+        loadRevocations();
+        pollThread.scheduleWithFixedDelay(this::poll, pollIntervalInMillis, pollIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollThread.shutdownNow();
+    }
+
+    /**
+     * Whether the token with the given id, belonging to the given user and issued at "issuedAt", has been revoked.  Any
+     * of these may be null (e.g. for tokens issued before they were added as claims), in which case the revocations
+     * that need them are skipped.
+     */
+    public boolean isRevoked(
+            final String tokenId,
+            final String userId,
+            final Date issuedAt
+    ) {
+        final BloomFilter filter = bloomFilter;
+        if (tokenId != null && filter.mightContain(TOKEN_PREFIX + tokenId)
+                && revocations.containsKey(TOKEN_PREFIX + tokenId)) {
+            return true;
+        }
+        if (userId != null && issuedAt != null && filter.mightContain(USER_PREFIX + userId)) {
+            final Revocation revocation = revocations.get(USER_PREFIX + userId);
+            // A token's issue time only has whole seconds, so tokens issued within the same second as the revocation
+            // (such as the ones issued right after a password change) are let through.
+            return revocation != null && issuedAt.getTime() < revocation.getRevokedTime() / 1000 * 1000;
+        }
+        return false;
+    }
+
+    /**
+     * Revokes a single token, e.g. on logout.  The revocation is kept until "expires", when the token expires anyway.
+     */
+    public void revokeToken(
+            final String tokenId,
+            final Date expires
+    ) {
+        revoke(TOKEN_PREFIX + tokenId, System.currentTimeMillis(), expires.getTime());
+    }
+
+    /**
+     * Revokes all of a user's tokens issued up to now, e.g. on a password change.  The revocation is kept until the
+     * longest-lived of those tokens has expired.
+     */
+    public void revokeUser(final UUID userId) {
+        final long now = System.currentTimeMillis();
+        revoke(USER_PREFIX + userId, now, now + JwtTokens.REFRESH_TOKEN_TTL_IN_MILLIS);
+    }
+
+
+    private void revoke(
+            final String key,
+            final long revokedTime,
+            final long expiresTime
+    ) {
+        revokedTokenRepository.save(new RevokedToken(key, new Timestamp(revokedTime), new Timestamp(expiresTime)));
+        // Into the map before the filter, so that a concurrent "rebuildBloomFilter()" can't miss it (see there).
+        revocations.put(key, new Revocation(revokedTime, expiresTime));
+        bloomFilter.put(key);
+    }
+
+    private synchronized void loadRevocations() {
+        final long now = System.currentTimeMillis();
+        for (final RevokedToken revokedToken : revokedTokenRepository.findByExpiresTimeAfter(new Timestamp(now))) {
+            addRevocation(revokedToken);
+        }
+        lastPollTime = now;
+        rebuildBloomFilter();
+        System.out.printf("Loaded %d token revocations%n", revocations.size());
+    }
+
+    private synchronized void poll() {
+        try {
+            final long now = System.currentTimeMillis();
+            final BloomFilter filter = bloomFilter;
+            for (final RevokedToken revokedToken : revokedTokenRepository.findByRevokedTimeAfter(new Timestamp(lastPollTime - POLL_OVERLAP_IN_MILLIS))) {
+                addRevocation(revokedToken);
+                filter.put(revokedToken.getRevocationKey());
+            }
+            lastPollTime = now;
+
+            revokedTokenRepository.deleteExpired(new Timestamp(now));
+            final boolean purged = revocations.values().removeIf(revocation -> revocation.getExpiresTime() < now);
+            if (purged || revocations.size() > bloomFilterCapacity) {
+                rebuildBloomFilter();
+            }
+        } catch (final Exception e) {
+            // Keep polling... an exception escaping here would cancel all further polls
+            System.out.printf("Failed to poll for token revocations: %s%n", e);
+        }
+    }
+
+    private void addRevocation(final RevokedToken revokedToken) {
+        final Revocation revocation = new Revocation(revokedToken.getRevokedTime().getTime(), revokedToken.getExpiresTime().getTime());
+        revocations.merge(
+                revokedToken.getRevocationKey(),
+                revocation,
+                (existing, loaded) -> existing.getRevokedTime() >= loaded.getRevokedTime() ? existing : loaded
+        );
+    }
+
+    /**
+     * Swaps in a new Bloom filter holding all of the current revocations, sized for twice as many of them (or for
+     * "expectedRevocations", whichever is greater).  The keys are added in a second pass after the swap, to catch any
+     * key put into "revocations" during the first pass but added (by "revoke()") to the old filter.
+     */
+    private void rebuildBloomFilter() {
+        final int capacity = Math.max(expectedRevocations, revocations.size() * 2);
+        final BloomFilter filter = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        revocations.keySet().forEach(filter::put);
+        bloomFilter = filter;
+        revocations.keySet().forEach(filter::put);
+        bloomFilterCapacity = capacity;
+    }
+
+    /**
+     * An entry in "revocations".
+     */
+    static class Revocation {
+
+        private final long revokedTime;
+        private final long expiresTime;
+
+        public Revocation(final long revokedTime, final long expiresTime) {
+            this.revokedTime = revokedTime;
+            this.expiresTime = expiresTime;
+        }
+
+
+        public final long getRevokedTime() {
+            return revokedTime;
+        }
+
+
+        public final long getExpiresTime() {
+            return expiresTime;
+        }
+    }
+
+}
@@ -125,6 +125,14 @@ public class User {
     @Column(name = "LAST_UPDATED_TIME", nullable = false)
     private Timestamp lastUpdatedTime;
 
+    /**
+     * Bumped whenever the profile changes, so that profile values copied into a login token can be recognized as stale.
+     * It's only ever written by "UserRepository.incrementProfileVersion()", never by saving the entity, so that a save
+     * from an older copy of the user can't roll it back.
+     */
+    @Column(name = "PROFILE_VERSION", nullable = false, insertable = false, updatable = false)
+    private int profileVersion;
+
     @OneToMany(mappedBy = "user")
     private Set<Weight> weights = new HashSet<>();
 
@@ -276,6 +284,11 @@ public class User {
     }
 
 
+    public int getProfileVersion() {
+        return profileVersion;
+    }
+
+
     public Set<Weight> getWeights() {
         return weights;
     }
@@ -0,0 +1,46 @@
+package com.vb.fitnessapp.repository;
+
+import com.vb.fitnessapp.domain.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface UserRepository extends CrudRepository<User, UUID> {
+
+
+    User findByEmailEquals(String email);
+
+    /**
+     * The first batch of users in id order.  Subsequent batches are read with "findByIdGreaterThanOrderByIdAsc", which
+     * pages by the last user id seen rather than by offset.
+     */
+
+    List<User> findAllByOrderByIdAsc(Pageable pageable);
+
+
+    List<User> findByIdGreaterThanOrderByIdAsc(UUID id, Pageable pageable);
+
+    /**
+     * Reads just the user's profile version, without loading the rest of the user.  Returns null if there's no such
+     * user.
+     */
+    @Query("SELECT user.profileVersion FROM User user WHERE user.id = :id")
+
+    Integer findProfileVersionById(@Param("id") UUID id);
+
+    /**
+     * Bumps the user's profile version in place.  Returns the number of rows affected.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User user SET user.profileVersion = user.profileVersion + 1 WHERE user.id = :id")
+
+    int incrementProfileVersion(@Param("id") UUID id);
+
+}
@@ -0,0 +1,372 @@
+package com.vb.fitnessapp.service;
+
+import com.vb.fitnessapp.domain.User;
+import com.vb.fitnessapp.domain.Weight;
+import com.vb.fitnessapp.dto.UserDTO;
+import com.vb.fitnessapp.dto.WeightDTO;
+import com.vb.fitnessapp.dto.converter.UserToUserDTO;
+import com.vb.fitnessapp.dto.converter.WeightToWeightDTO;
+import com.vb.fitnessapp.repository.UserRepository;
+import com.vb.fitnessapp.repository.WeightRepository;
+import org.mindrot.jbcrypt.BCrypt;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.security.SecureRandom;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@Service
+public final class UserService {
+
+    private final ReportDataService reportDataService;
+    private final TokenRevocationService tokenRevocationService;
+    private final UserRepository userRepository;
+    private final WeightRepository weightRepository;
+    private final UserToUserDTO userDTOConverter;
+    private final WeightToWeightDTO weightDTOConverter;
+
+    /**
+     * Every authenticated request looks up its user by email (see AbstractController.currentAuthenticatedUser()), so
+     * the resulting UserDTO's are cached here for "user-cache.ttl-in-millis".  The cache is invalidated whenever this
+     * service changes a user's profile or weights.  The TTL bounds how stale an entry can get otherwise... e.g. from a
+     * lookup racing with an invalidation, or from the age-based values rolling over on a birthday.  At most
+     * "user-cache.max-size" of them are cached (see ExpiringCache).
+     */
+    private final ExpiringCache<String, UserDTO> userDTOCache;
+
+    /**
+     * Login tokens carry the user's time zone and profile version (see AuthController.issueToken()), and the time zone
+     * in a token is only trusted while its profile version is still current.  Current versions are cached here for
+     * "user-cache.ttl-in-millis" too, and are dropped whenever this service changes a profile.  Another node sees the
+     * change once its own entry expires.
+     */
+    private final ExpiringCache<UUID, Integer> profileVersionCache;
+
+    @Value("${user-cache.ttl-in-millis:60000}")
+    private long userCacheTtlInMillis;
+
+    /**
+     * BCrypt is slow on purpose, so the async password methods below hash and verify on their own bounded pool rather
+     * than on the request threads.  A burst of logins then queues up here, instead of tying up the workers which serve
+     * everything else.  Jobs beyond the queue's capacity are rejected, and so are jobs for an account which already has
+     * "password-hashing.max-per-account" of them queued or running... so that one account being hammered can't take up
+     * the whole queue.  "passwordJobsPerAccount" holds the counts, and only has entries for accounts with jobs in flight.
+     */
+    private final ThreadPoolExecutor passwordHashingThreadPool;
+    private final Map<UUID, Integer> passwordJobsPerAccount = new ConcurrentHashMap<>();
+
+    /**
+     * Saves the user once "updateUserAsync()" has hashed the new password, so that the database round trips don't hold
+     * up a password hashing thread.  Its queue needs no bound of its own, since every job on it follows a hashing job
+     * that was already admitted.
+     */
+    private final ExecutorService userSaveThreadPool;
+
+    @Value("${password-hashing.max-per-account:2}")
+    private int maxPasswordJobsPerAccount;
+
+    /**
+     * The size of the password hashing pool can be set with "password-hashing.threads" in the "application.yml" config
+     * file, and defaults to half the available processors.  Its queue holds "password-hashing.queue-size" jobs.
+     */
+    @Autowired
+    public UserService(
+            final ReportDataService reportDataService,
+            final TokenRevocationService tokenRevocationService,
+            final UserRepository userRepository,
+            final WeightRepository weightRepository,
+            final UserToUserDTO userDTOConverter,
+            final WeightToWeightDTO weightDTOConverter,
+            @Value("${password-hashing.threads:0}") final int passwordHashingThreads,
+            @Value("${password-hashing.queue-size:100}") final int passwordHashingQueueSize,
+            @Value("${user-cache.max-size:10000}") final int userCacheMaxSize
+    ) {
+        this.reportDataService = reportDataService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.userRepository = userRepository;
+        this.weightRepository = weightRepository;
+        this.userDTOConverter = userDTOConverter;
+        this.weightDTOConverter = weightDTOConverter;
+        this.userDTOCache = new ExpiringCache<>(userCacheMaxSize);
+        this.profileVersionCache = new ExpiringCache<>(userCacheMaxSize);
+
+        final int poolSize = passwordHashingThreads > 0
+                ? passwordHashingThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.passwordHashingThreadPool = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(passwordHashingQueueSize),
+                daemonThreadFactory("password-hashing")
+        );
+        this.userSaveThreadPool = Executors.newFixedThreadPool(poolSize, daemonThreadFactory("user-save"));
+    }
+
+
+    /**
+     * Returns a copy of the (possibly cached) UserDTO, which the caller is free to modify.
+     */
+
+    public UserDTO findByEmail(final String email) {
+        if (email == null) {
+            return null;
+        }
+        final UserDTO cachedUserDTO = userDTOCache.get(email);
+        if (cachedUserDTO != null) {
+            return copyOf(cachedUserDTO);
+        }
+        final User user = userRepository.findByEmailEquals(email);
+        final UserDTO userDTO = userDTOConverter.convert(user);
+        if (userDTO != null) {
+            userDTOCache.put(email, userDTO, System.currentTimeMillis() + userCacheTtlInMillis);
+        }
+        return copyOf(userDTO);
+    }
+
+    /**
+     * Returns the user's current profile version, or null if there's no such user.
+     */
+
+    public Integer findProfileVersion(final UUID userId) {
+        if (userId == null) {
+            return null;
+        }
+        final Integer cachedProfileVersion = profileVersionCache.get(userId);
+        if (cachedProfileVersion != null) {
+            return cachedProfileVersion;
+        }
+        final Integer profileVersion = userRepository.findProfileVersionById(userId);
+        if (profileVersion != null) {
+            profileVersionCache.put(userId, profileVersion, System.currentTimeMillis() + userCacheTtlInMillis);
+        }
+        return profileVersion;
+    }
+
+
+    public boolean isProfileVersionCurrent(
+            final UUID userId,
+            final int profileVersion
+    ) {
+        final Integer currentProfileVersion = findProfileVersion(userId);
+        return currentProfileVersion != null && currentProfileVersion == profileVersion;
+    }
+
+    public void createUser(
+            final UserDTO userDTO,
+            final String password
+    ) {
+        final User user = new User(
+                userDTO.getId(),
+                userDTO.getGender(),
+                userDTO.getBirthdate(),
+                userDTO.getHeightInInches(),
+                userDTO.getActivityLevel(),
+                userDTO.getEmail(),
+                encryptPassword(password),
+                userDTO.getFirstName(),
+                userDTO.getLastName(),
+                userDTO.getTimeZone(),
+                new Timestamp(new java.util.Date().getTime()),
+                new Timestamp(new java.util.Date().getTime())
+        );
+        userRepository.save(user);
+        reportDataService.updateUserFromDate(user, new Date(System.currentTimeMillis()));
+    }
+
+    public void updateUser(final UserDTO userDTO) {
+        updateUser(userDTO, null);
+    }
+
+    /**
+     * TODO: Document
+     * TODO: Require logout and re-login after changing the username (or password?)
+     * TODO: Don't allow email changes at all when using an external identity provider (e.g. Google)
+     * TODO: On second thought, maybe just don't allow email changes period?
+     */
+    public void updateUser(
+            final UserDTO userDTO,
+            final String newPassword
+    ) {
+        updateUserWithPasswordHash(userDTO, newPassword == null || newPassword.isEmpty() ? null : encryptPassword(newPassword));
+    }
+
+    /**
+     * The same as "updateUser(userDTO, newPassword)" above, but with the new password hashed on the password hashing
+     * pool, and the user then saved on "userSaveThreadPool".  The returned future completes once the user is saved, or
+     * fails with a RejectedExecutionException if the hashing pool (or this account's share of it) is full.
+     */
+
+    public CompletableFuture<Void> updateUserAsync(
+            final UserDTO userDTO,
+            final String newPassword
+    ) {
+        return submitPasswordJob(userDTO.getId(), () -> encryptPassword(newPassword))
+                .thenAcceptAsync(passwordHash -> updateUserWithPasswordHash(userDTO, passwordHash), userSaveThreadPool);
+    }
+
+    private void updateUserWithPasswordHash(
+            final UserDTO userDTO,
+            final String passwordHash
+    ) {
+        final User user = userRepository.findOne(userDTO.getId());
+        final String previousEmail = user.getEmail();
+        user.setGender(userDTO.getGender());
+        user.setBirthdate(userDTO.getBirthdate());
+        user.setHeightInInches(userDTO.getHeightInInches());
+        user.setActivityLevel(userDTO.getActivityLevel());
+        user.setEmail(userDTO.getEmail());
+        user.setFirstName(userDTO.getFirstName());
+        user.setLastName(userDTO.getLastName());
+        user.setTimeZone(userDTO.getTimeZone());
+        if (passwordHash != null) {
+            user.setPasswordHash(passwordHash);
+        }
+        final java.util.Date lastUpdatedDate = reportDataService.adjustDateForTimeZone(new Date(new java.util.Date().getTime()), ZoneId.of(userDTO.getTimeZone()));
+        user.setLastUpdatedTime(new Timestamp(lastUpdatedDate.getTime()));
+        userRepository.save(user);
+        userRepository.incrementProfileVersion(user.getId());
+        userDTOCache.remove(previousEmail);
+        userDTOCache.remove(user.getEmail());
+        profileVersionCache.remove(user.getId());
+        if (passwordHash != null) {
+            // Log out every session started with the old password (the caller gets fresh tokens, see ProfileController)
+            tokenRevocationService.revokeUser(user.getId());
+        }
+        reportDataService.updateUserFromDate(user, new Date(System.currentTimeMillis()));
+    }
+
+
+    public WeightDTO findWeightOnDate(
+            final UserDTO userDTO,
+            final Date date
+    ) {
+        final User user = userRepository.findOne(userDTO.getId());
+        final Weight weight = weightRepository.findByUserMostRecentOnDate(user, date);
+        return weightDTOConverter.convert(weight);
+    }
+
+    public void updateWeight(
+            final UserDTO userDTO,
+            final Date date,
+            final double pounds
+    ) {
+        final User user = userRepository.findOne(userDTO.getId());
+        Weight weight = weightRepository.findByUserAndDate(user, date);
+        if (weight == null) {
+            weight = new Weight(
+                    UUID.randomUUID(),
+                    user,
+                    date,
+                    pounds
+            );
+        } else {
+            weight.setPounds(pounds);
+        }
+        weightRepository.save(weight);
+        // The current weight (and everything derived from it) may have changed.
+        userDTOCache.remove(user.getEmail());
+        final Weight nextWeight = weightRepository.findFirstByUserAndDateAfterOrderByDateAsc(user, date);
+        reportDataService.updateUserFromDate(user, date, nextWeight == null ? null : nextWeight.getDate());
+    }
+
+    public boolean verifyPassword(
+            final UserDTO userDTO,
+            final String password
+    ) {
+        final User user = userRepository.findOne(userDTO.getId());
+        return BCrypt.checkpw(password, user.getPasswordHash());
+    }
+
+    /**
+     * The same as "verifyPassword()" above, but with the check run on the password hashing pool.  The returned future
+     * fails with a RejectedExecutionException if the pool (or this account's share of it) is full.
+     */
+
+    public CompletableFuture<Boolean> verifyPasswordAsync(
+            final UserDTO userDTO,
+            final String password
+    ) {
+        final User user = userRepository.findOne(userDTO.getId());
+        final String passwordHash = user.getPasswordHash();
+        return submitPasswordJob(user.getId(), () -> passwordHash != null && BCrypt.checkpw(password, passwordHash));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        passwordHashingThreadPool.shutdownNow();
+        userSaveThreadPool.shutdownNow();
+    }
+
+
+    private <T> CompletableFuture<T> submitPasswordJob(
+            final UUID userId,
+            final Supplier<T> job
+    ) {
+        if (passwordJobsPerAccount.merge(userId, 1, Integer::sum) > maxPasswordJobsPerAccount) {
+            releasePasswordJob(userId);
+            return rejected(new RejectedExecutionException("Too many password jobs in flight for user " + userId));
+        }
+        try {
+            return CompletableFuture.supplyAsync(job, passwordHashingThreadPool)
+                    .whenComplete((result, throwable) -> releasePasswordJob(userId));
+        } catch (final RejectedExecutionException e) {
+            releasePasswordJob(userId);
+            return rejected(e);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String namePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void releasePasswordJob(final UUID userId) {
+        passwordJobsPerAccount.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static <T> CompletableFuture<T> rejected(final RejectedExecutionException e) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+
+    private String encryptPassword(final String rawPassword) {
+        final String salt = BCrypt.gensalt(10, new SecureRandom());
+        return BCrypt.hashpw(rawPassword, salt);
+    }
+
+    private static UserDTO copyOf(final UserDTO userDTO) {
+        if (userDTO == null) {
+            return null;
+        }
+        final UserDTO copy = new UserDTO();
+        BeanUtils.copyProperties(userDTO, copy);
+        return copy;
+    }
+
+}
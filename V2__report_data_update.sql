@@ -0,0 +1,16 @@
+--
+-- Table structure for table `report_data_update`
+--
+
+DROP TABLE IF EXISTS `report_data_update`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `report_data_update` (
+  `user_id` binary(16) NOT NULL,
+  `update_id` binary(16) NOT NULL,
+  `start_date` date NOT NULL,
+  `end_date` date DEFAULT NULL,
+  `due_time` datetime NOT NULL,
+  PRIMARY KEY (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin;
+/*!40101 SET character_set_client = @saved_cs_client */;
@@ -0,0 +1,7 @@
+--
+-- Lease columns for table `report_data_update`, used to coordinate report recomputation between application nodes
+--
+
+ALTER TABLE `report_data_update`
+  ADD COLUMN `lease_owner` varchar(64) DEFAULT NULL,
+  ADD COLUMN `lease_expires` datetime DEFAULT NULL;
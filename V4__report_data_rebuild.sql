@@ -0,0 +1,19 @@
+--
+-- Table structure for table `report_data_rebuild`
+--
+
+DROP TABLE IF EXISTS `report_data_rebuild`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `report_data_rebuild` (
+  `id` binary(16) NOT NULL,
+  `status` varchar(255) NOT NULL,
+  `last_user_id` binary(16) DEFAULT NULL,
+  `users_total` bigint(20) NOT NULL,
+  `users_done` bigint(20) NOT NULL,
+  `rows_written` bigint(20) NOT NULL,
+  `started_time` datetime NOT NULL,
+  `last_updated_time` datetime NOT NULL,
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin;
+/*!40101 SET character_set_client = @saved_cs_client */;
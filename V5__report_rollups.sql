@@ -0,0 +1,51 @@
+--
+-- Table structure for table `report_week`
+--
+
+DROP TABLE IF EXISTS `report_week`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `report_week` (
+  `user_id` binary(16) NOT NULL,
+  `start_date` date NOT NULL,
+  `average_pounds` double NOT NULL,
+  `total_net_calories` bigint(20) NOT NULL,
+  `total_net_points` double NOT NULL,
+  `days_logged` int(11) NOT NULL,
+  PRIMARY KEY (`user_id`,`start_date`),
+  CONSTRAINT `FK_report_week_user` FOREIGN KEY (`user_id`) REFERENCES `fitnessjiffy_user` (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `report_month`
+--
+
+DROP TABLE IF EXISTS `report_month`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `report_month` (
+  `user_id` binary(16) NOT NULL,
+  `start_date` date NOT NULL,
+  `average_pounds` double NOT NULL,
+  `total_net_calories` bigint(20) NOT NULL,
+  `total_net_points` double NOT NULL,
+  `days_logged` int(11) NOT NULL,
+  PRIMARY KEY (`user_id`,`start_date`),
+  CONSTRAINT `FK_report_month_user` FOREIGN KEY (`user_id`) REFERENCES `fitnessjiffy_user` (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Backfill both tables from the existing daily rows (weeks start on Monday, which WEEKDAY() numbers as 0)
+--
+
+INSERT INTO `report_week` (`user_id`, `start_date`, `average_pounds`, `total_net_calories`, `total_net_points`, `days_logged`)
+SELECT `user_id`, DATE_SUB(`date`, INTERVAL WEEKDAY(`date`) DAY), AVG(`pounds`), SUM(`net_calories`), SUM(`net_points`), COUNT(*)
+FROM `report_data`
+GROUP BY `user_id`, DATE_SUB(`date`, INTERVAL WEEKDAY(`date`) DAY);
+
+INSERT INTO `report_month` (`user_id`, `start_date`, `average_pounds`, `total_net_calories`, `total_net_points`, `days_logged`)
+SELECT `user_id`, DATE_FORMAT(`date`, '%Y-%m-01'), AVG(`pounds`), SUM(`net_calories`), SUM(`net_points`), COUNT(*)
+FROM `report_data`
+GROUP BY `user_id`, DATE_FORMAT(`date`, '%Y-%m-01');
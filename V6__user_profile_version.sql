@@ -0,0 +1,7 @@
+--
+-- Profile version column for table `fitnessjiffy_user`, stamped into login tokens so that stale profile claims can be
+-- recognized
+--
+
+ALTER TABLE `fitnessjiffy_user`
+  ADD COLUMN `profile_version` int(11) NOT NULL DEFAULT 0;
@@ -0,0 +1,15 @@
+--
+-- Table structure for table `revoked_token`
+--
+
+DROP TABLE IF EXISTS `revoked_token`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `revoked_token` (
+  `revocation_key` varchar(64) NOT NULL,
+  `revoked_time` datetime NOT NULL,
+  `expires_time` datetime NOT NULL,
+  PRIMARY KEY (`revocation_key`),
+  KEY `IDX_revoked_token_revoked_time` (`revoked_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_bin;
+/*!40101 SET character_set_client = @saved_cs_client */;
@@ -0,0 +1,7 @@
+--
+-- Owner columns for table `report_data_rebuild`, so that only one application node runs (or resumes) a rebuild job
+--
+
+ALTER TABLE `report_data_rebuild`
+  ADD COLUMN `owner` varchar(64) DEFAULT NULL,
+  ADD COLUMN `heartbeat_time` datetime DEFAULT NULL;
@@ -0,0 +1,6 @@
+--
+-- Failure count column for table `report_data_rebuild`, for users whose rebuild threw rather than finished
+--
+
+ALTER TABLE `report_data_rebuild`
+  ADD COLUMN `users_failed` bigint(20) NOT NULL DEFAULT 0;
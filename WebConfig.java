@@ -1,15 +1,45 @@
 package com.vb.fitnessapp.config;
 
+import com.vb.fitnessapp.service.ReportDataService;
+import com.vb.fitnessapp.service.TokenRevocationService;
+import com.vb.fitnessapp.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
 
 import javax.servlet.MultipartConfigElement;
+import java.util.Arrays;
+import java.util.Collections;
 
 @Configuration
 public class WebConfig extends WebMvcConfigurerAdapter {
 
+    private final ReportDataService reportDataService;
+    private final TokenRevocationService tokenRevocationService;
+    private final UserService userService;
+    private final long leasePollInMillis;
+
+    @Autowired
+    public WebConfig(
+            final ReportDataService reportDataService,
+            final TokenRevocationService tokenRevocationService,
+            final UserService userService,
+            @Value("${reportdata.lease-poll-in-millis:60000}") final long leasePollInMillis
+    ) {
+        this.reportDataService = reportDataService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.userService = userService;
+        this.leasePollInMillis = leasePollInMillis;
+    }
+
     /** Needed to support file uploads. */
     @Bean
 
@@ -17,12 +47,47 @@ public class WebConfig extends WebMvcConfigurerAdapter {
         return new MultipartConfigElement("");
     }
 
+    /**
+     * Serves "/static/**" from the "public/static" directory on the classpath (see StaticResourceFilter), preferring the
+     * precompressed variants made by the build where the client accepts them.
+     */
+    @Bean
+    public ResourceHttpRequestHandler staticResourceHandler() {
+        final ResourceHttpRequestHandler resourceHandler = new ResourceHttpRequestHandler();
+        resourceHandler.setLocations(Collections.singletonList(new ClassPathResource("public/static/")));
+        resourceHandler.setResourceResolvers(Arrays.asList(new PrecompressedResourceResolver(), new PathResourceResolver()));
+        return resourceHandler;
+    }
+
+    /** Static resources are answered first, so that they never reach JwtFilter or anything after it. */
+    @Bean
+    public FilterRegistrationBean staticResourceFilter() {
+        final FilterRegistrationBean registrationBean = new FilterRegistrationBean();
+        registrationBean.setFilter(new StaticResourceFilter(staticResourceHandler(), StaticResourceFilter.loadFingerprintedPaths()));
+        registrationBean.addUrlPatterns(StaticResourceFilter.PATH_PREFIX + "*");
+        registrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registrationBean;
+    }
+
+    /** Shared by JwtFilter and AuthController, so that both see the refresh tokens the other has just replaced. */
+    @Bean
+    public TokenRefresher tokenRefresher() {
+        return new TokenRefresher(userService, tokenRevocationService);
+    }
+
     @Bean
     public FilterRegistrationBean jwtFilter() {
         final FilterRegistrationBean registrationBean = new FilterRegistrationBean();
-        registrationBean.setFilter(new JwtFilter());
+        registrationBean.setFilter(new JwtFilter(tokenRevocationService, tokenRefresher()));
         registrationBean.addUrlPatterns("/*");
         return registrationBean;
     }
 
+    /** Only the routes whose writes schedule ReportData updates are subject to backpressure. */
+    @Override
+    public void addInterceptors(final InterceptorRegistry registry) {
+        registry.addInterceptor(new ReportDataBackpressureInterceptor(reportDataService, leasePollInMillis))
+                .addPathPatterns("/api/foodeaten/**", "/api/user/weight/**", "/exercise/performed/**", "/api/food/update");
+    }
+
 }
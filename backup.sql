@@ -21878,7 +21878,8 @@ CREATE CACHED TABLE PUBLIC.FITNESSJIFFY_USER(
     LAST_NAME VARCHAR(20) NOT NULL,
     TIMEZONE VARCHAR(50) NOT NULL DEFAULT 'America/New_York',
     LAST_UPDATED_TIME TIMESTAMP NOT NULL,
-    PASSWORD_HASH VARCHAR(100)
+    PASSWORD_HASH VARCHAR(100),
+    PROFILE_VERSION INT4 NOT NULL DEFAULT 0
 );
 ALTER TABLE PUBLIC.FITNESSJIFFY_USER ADD CONSTRAINT PUBLIC.CONSTRAINT_1 PRIMARY KEY(ID);
 -- 1 +/- SELECT COUNT(*) FROM PUBLIC.FITNESSJIFFY_USER;       
@@ -24077,6 +24078,59 @@ CREATE CACHED TABLE PUBLIC.REPORT_DATA(
 );
 ALTER TABLE PUBLIC.REPORT_DATA ADD CONSTRAINT PUBLIC.CONSTRAINT_73 PRIMARY KEY(ID);
 -- 0 +/- SELECT COUNT(*) FROM PUBLIC.REPORT_DATA;
+CREATE CACHED TABLE PUBLIC.REPORT_DATA_UPDATE(
+    USER_ID BYTEA NOT NULL,
+    UPDATE_ID BYTEA NOT NULL,
+    START_DATE DATE NOT NULL,
+    END_DATE DATE,
+    DUE_TIME TIMESTAMP NOT NULL,
+    LEASE_OWNER VARCHAR(64),
+    LEASE_EXPIRES TIMESTAMP
+);
+ALTER TABLE PUBLIC.REPORT_DATA_UPDATE ADD CONSTRAINT PUBLIC.CONSTRAINT_RDU PRIMARY KEY(USER_ID);
+-- 0 +/- SELECT COUNT(*) FROM PUBLIC.REPORT_DATA_UPDATE;
+CREATE CACHED TABLE PUBLIC.REPORT_DATA_REBUILD(
+    ID BYTEA NOT NULL,
+    STATUS VARCHAR(255) NOT NULL,
+    LAST_USER_ID BYTEA,
+    USERS_TOTAL INT8 NOT NULL,
+    USERS_DONE INT8 NOT NULL,
+    ROWS_WRITTEN INT8 NOT NULL,
+    STARTED_TIME TIMESTAMP NOT NULL,
+    LAST_UPDATED_TIME TIMESTAMP NOT NULL,
+    OWNER VARCHAR(64),
+    HEARTBEAT_TIME TIMESTAMP,
+    USERS_FAILED INT8 DEFAULT 0 NOT NULL
+);
+ALTER TABLE PUBLIC.REPORT_DATA_REBUILD ADD CONSTRAINT PUBLIC.CONSTRAINT_RDR PRIMARY KEY(ID);
+-- 0 +/- SELECT COUNT(*) FROM PUBLIC.REPORT_DATA_REBUILD;
+CREATE CACHED TABLE PUBLIC.REPORT_WEEK(
+    USER_ID BYTEA NOT NULL,
+    START_DATE DATE NOT NULL,
+    AVERAGE_POUNDS FLOAT8 NOT NULL,
+    TOTAL_NET_CALORIES INT8 NOT NULL,
+    TOTAL_NET_POINTS FLOAT8 NOT NULL,
+    DAYS_LOGGED INT4 NOT NULL
+);
+ALTER TABLE PUBLIC.REPORT_WEEK ADD CONSTRAINT PUBLIC.CONSTRAINT_RW PRIMARY KEY(USER_ID, START_DATE);
+-- 0 +/- SELECT COUNT(*) FROM PUBLIC.REPORT_WEEK;
+CREATE CACHED TABLE PUBLIC.REPORT_MONTH(
+    USER_ID BYTEA NOT NULL,
+    START_DATE DATE NOT NULL,
+    AVERAGE_POUNDS FLOAT8 NOT NULL,
+    TOTAL_NET_CALORIES INT8 NOT NULL,
+    TOTAL_NET_POINTS FLOAT8 NOT NULL,
+    DAYS_LOGGED INT4 NOT NULL
+);
+ALTER TABLE PUBLIC.REPORT_MONTH ADD CONSTRAINT PUBLIC.CONSTRAINT_RM PRIMARY KEY(USER_ID, START_DATE);
+-- 0 +/- SELECT COUNT(*) FROM PUBLIC.REPORT_MONTH;
+CREATE CACHED TABLE PUBLIC.REVOKED_TOKEN(
+    REVOCATION_KEY VARCHAR(64) NOT NULL,
+    REVOKED_TIME TIMESTAMP NOT NULL,
+    EXPIRES_TIME TIMESTAMP NOT NULL
+);
+ALTER TABLE PUBLIC.REVOKED_TOKEN ADD CONSTRAINT PUBLIC.CONSTRAINT_RT PRIMARY KEY(REVOCATION_KEY);
+-- 0 +/- SELECT COUNT(*) FROM PUBLIC.REVOKED_TOKEN;
 ALTER TABLE PUBLIC.FOOD_EATEN ADD CONSTRAINT PUBLIC.UK_O17XKHTHGNQE2ICJGAMJBUN93 UNIQUE(USER_ID, FOOD_ID, DATE);
 ALTER TABLE PUBLIC.REPORT_DATA ADD CONSTRAINT PUBLIC.UK_5BACNYPI0A0A5VCXAQOVYTQ93 UNIQUE(USER_ID, DATE);
 ALTER TABLE PUBLIC.FOOD ADD CONSTRAINT PUBLIC.UK_OF9WDGTXDH2MGH2CFH3SPLLVI UNIQUE(ID, OWNER_ID);
@@ -24085,6 +24139,8 @@ ALTER TABLE PUBLIC.EXERCISE_PERFORMED ADD CONSTRAINT PUBLIC.UK_OC1FOGNYWYV0FN3DC
 ALTER TABLE PUBLIC.EXERCISE_PERFORMED ADD CONSTRAINT PUBLIC.FK_O3B6RRWBOC2SSHGGRQ8HJW3XU FOREIGN KEY(USER_ID) REFERENCES PUBLIC.FITNESSJIFFY_USER(ID) NOCHECK;
 ALTER TABLE PUBLIC.WEIGHT ADD CONSTRAINT PUBLIC.FK_RUS9MPSDMIJSL6FUJHHUD5PGU FOREIGN KEY(USER_ID) REFERENCES PUBLIC.FITNESSJIFFY_USER(ID) NOCHECK;
 ALTER TABLE PUBLIC.REPORT_DATA ADD CONSTRAINT PUBLIC.FK_MM7J7RV35AWETXL921USMTDM4 FOREIGN KEY(USER_ID) REFERENCES PUBLIC.FITNESSJIFFY_USER(ID) NOCHECK;
+ALTER TABLE PUBLIC.REPORT_WEEK ADD CONSTRAINT PUBLIC.FK_REPORT_WEEK_USER FOREIGN KEY(USER_ID) REFERENCES PUBLIC.FITNESSJIFFY_USER(ID) NOCHECK;
+ALTER TABLE PUBLIC.REPORT_MONTH ADD CONSTRAINT PUBLIC.FK_REPORT_MONTH_USER FOREIGN KEY(USER_ID) REFERENCES PUBLIC.FITNESSJIFFY_USER(ID) NOCHECK;
 ALTER TABLE PUBLIC.FOOD ADD CONSTRAINT PUBLIC.FK_K8UGF925YEO9P3F8VWDO8CTSU FOREIGN KEY(OWNER_ID) REFERENCES PUBLIC.FITNESSJIFFY_USER(ID) NOCHECK;
 ALTER TABLE PUBLIC.EXERCISE_PERFORMED ADD CONSTRAINT PUBLIC.FK_52NUB55R5MUSRFYJSVPTH76BH FOREIGN KEY(EXERCISE_ID) REFERENCES PUBLIC.EXERCISE(ID) NOCHECK;
 ALTER TABLE PUBLIC.FOOD_EATEN ADD CONSTRAINT PUBLIC.FK_A6T0PIKJIP5A2K9JNTW8S0755 FOREIGN KEY(FOOD_ID) REFERENCES PUBLIC.FOOD(ID) NOCHECK;